@@ -0,0 +1,36 @@
+package se.liu.marfr380;
+
+/**
+ * The fixed suite of positions all benchmarks run over, so that results from different runs and different benchmarks
+ * can be compared.
+ */
+public enum BenchmarkPositions
+{
+    OPENING(Board.START_FEN),
+    ITALIAN("r1bqk1nr/pppp1ppp/2n5/2b1p3/2B1P3/5N2/PPPP1PPP/RNBQK2R w KQkq - 4 4"),
+    MIDDLEGAME("r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10"),
+    KIWIPETE("r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1"),
+    ROOK_ENDGAME("8/5pk1/6p1/8/3R4/6P1/r4PK1/8 w - - 0 40"),
+    PAWN_ENDGAME("8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1");
+
+    private final String fen;
+
+    BenchmarkPositions(String fen) {
+        this.fen = fen;
+    }
+
+    public String getFen() {
+        return fen;
+    }
+
+    /**
+     * Creates a new board set up with this position.
+     *
+     * @return The board.
+     */
+    public Board createBoard() {
+        Board board = new Board();
+        FENConverter.loadPositionFromFEN(board, fen);
+        return board;
+    }
+}
@@ -0,0 +1,49 @@
+package se.liu.marfr380;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the incremental evaluation against the full-scan reference over the positions in
+ * {@link BenchmarkPositions}.
+ */
+@State(Scope.Thread)
+public class EvaluationBenchmark
+{
+    @Param
+    private BenchmarkPositions position;
+
+    private Board board;
+    private final PawnHashTable pawns = new PawnHashTable();
+
+    @Setup public void setUp() {
+        board = position.createBoard();
+        if (Evaluation.evaluate(board) != Evaluation.evaluateFromScratch(board)) {
+            throw new IllegalStateException("Incremental and full-scan evaluations differ in " + position);
+        }
+    }
+
+    /**
+     * Evaluation from the sums the board keeps up to date, with the pawn structure found in the pawn table.
+     */
+    @Benchmark public int evaluate() {
+        return Evaluation.evaluate(board, pawns);
+    }
+
+    /**
+     * Evaluation from the sums the board keeps up to date, computing the pawn structure every time.
+     */
+    @Benchmark public int evaluateWithoutPawnTable() {
+        return Evaluation.evaluate(board);
+    }
+
+    /**
+     * Evaluation by reading every square of the board.
+     */
+    @Benchmark public int evaluateFromScratch() {
+        return Evaluation.evaluateFromScratch(board);
+    }
+}
@@ -0,0 +1,48 @@
+package se.liu.marfr380;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks FEN parsing and writing over the positions in {@link BenchmarkPositions}. The board and the builder are
+ * reused, as they are in batch jobs, so the allocation rate shows what the conversion itself allocates.
+ */
+@State(Scope.Thread)
+public class FENConverterBenchmark
+{
+    @Param
+    private BenchmarkPositions position;
+
+    private String fen;
+    private Board board;
+    private final StringBuilder builder = new StringBuilder(128);
+
+    @Setup public void setUp() {
+        fen = position.getFen();
+        board = position.createBoard();
+    }
+
+    @Benchmark public Board loadPositionFromFEN() {
+        FENConverter.loadPositionFromFEN(board, fen);
+        return board;
+    }
+
+    @Benchmark public int toFEN() {
+        builder.setLength(0);
+        FENConverter.toFEN(board, builder);
+        return builder.length();
+    }
+
+    /**
+     * A full round trip, as when a batch job reads a position and writes it back out.
+     */
+    @Benchmark public int roundTrip() {
+        FENConverter.loadPositionFromFEN(board, fen);
+        builder.setLength(0);
+        FENConverter.toFEN(board, builder);
+        return builder.length();
+    }
+}
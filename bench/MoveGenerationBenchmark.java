@@ -0,0 +1,77 @@
+package se.liu.marfr380;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+
+/**
+ * Benchmarks move generation, legality checks and mate detection over the positions in {@link BenchmarkPositions}.
+ */
+@State(Scope.Thread)
+public class MoveGenerationBenchmark
+{
+    @Param
+    private BenchmarkPositions position;
+
+    private Board board;
+    private PieceColor colorToMove;
+    private AbstractPiece king;
+    private final MoveList moves = new MoveList();
+
+    @Setup public void setUp() {
+        board = position.createBoard();
+        colorToMove = board.isWhiteToMove() ? PieceColor.WHITE : PieceColor.BLACK;
+        king = (AbstractPiece) board.getPieceAt(board.getKingPos(colorToMove));
+    }
+
+    /**
+     * Pseudo-legal moves of every piece of the side to move.
+     */
+    @Benchmark public List<Integer> findAllPossibleMoves() {
+        return board.findAllPossibleMoves(colorToMove);
+    }
+
+    /**
+     * Legal moves of every piece of the side to move.
+     */
+    @Benchmark public void findAllMoves(Blackhole blackhole) {
+        for (long pieces = board.getPieces(colorToMove); pieces != 0; pieces &= pieces - 1) {
+            blackhole.consume(board.getPieceAt(Long.numberOfTrailingZeros(pieces)).findAllMoves(board));
+        }
+    }
+
+    /**
+     * Pseudo-legal moves of every piece of the side to move, written into a reused list.
+     */
+    @Benchmark public int findAllPossibleMovesIntoList() {
+        moves.clear();
+        board.findAllPossibleMoves(colorToMove, moves);
+        return moves.size();
+    }
+
+    /**
+     * Legal moves of the side to move, written into a reused list by one generator.
+     */
+    @Benchmark public int generateLegalMoves() {
+        moves.clear();
+        new MoveGenerator(board).generateLegalMoves(moves);
+        return moves.size();
+    }
+
+    @Benchmark public boolean canCastleKingSide() {
+        return king.canCastleKingSide(board);
+    }
+
+    @Benchmark public boolean canCastleQueenSide() {
+        return king.canCastleQueenSide(board);
+    }
+
+    @Benchmark public boolean isMate() {
+        return board.isMate();
+    }
+}
@@ -0,0 +1,37 @@
+package se.liu.marfr380;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmarks the static exchange evaluation of every legal move of the positions in {@link BenchmarkPositions}. The
+ * evaluation should allocate nothing, which the GC profiler of {@link BenchmarkRunner} shows.
+ */
+@State(Scope.Thread)
+public class StaticExchangeBenchmark
+{
+    @Param
+    private BenchmarkPositions position;
+
+    private Board board;
+    private final MoveList moves = new MoveList();
+
+    @Setup public void setUp() {
+        board = position.createBoard();
+        new MoveGenerator(board).generateLegalMoves(moves);
+    }
+
+    /**
+     * Exchange evaluation of every legal move, captures and quiet moves alike.
+     */
+    @Benchmark public int evaluateAllMoves() {
+        int sum = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            sum += StaticExchange.evaluate(board, moves.get(i));
+        }
+        return sum;
+    }
+}
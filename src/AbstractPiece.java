@@ -1,8 +1,6 @@
 package se.liu.marfr380;
 
-import java.awt.*;
 import java.util.ArrayList;
-import java.util.EnumMap;
 import java.util.List;
 
 /**
@@ -13,14 +11,11 @@ public abstract class AbstractPiece implements Piece
     protected int pos;
     protected PieceType type;
     protected PieceColor color;
-    protected Image image;
 
     protected boolean isHeld = false;
 
     protected boolean hasMoved = false;
 
-    private final EnumMap<PieceType, Offset> offsets = createOffsetMap();
-
     /**
      * Constructs an abstract piece with the specified position, type, and color.
      *
@@ -32,7 +27,6 @@ public abstract class AbstractPiece implements Piece
 	this.pos = boardPos;
 	this.type = pieceType;
 	this.color = pieceColor;
-	this.image = PieceImage.loadImage(pieceType, pieceColor);
     }
 
     /**
@@ -75,24 +69,6 @@ public abstract class AbstractPiece implements Piece
 	return this.color;
     }
 
-    /**
-     * Returns the image representation of the piece.
-     *
-     * @return The image representation of the piece.
-     */
-    public Image getImage() {
-	return this.image;
-    }
-
-    /**
-     * Returns the offsets for the piece's possible moves.
-     *
-     * @return The offsets for the piece's possible moves.
-     */
-    public List<Integer> getOffsets() {
-	return offsets.get(type).getOffsets();
-    }
-
     /**
      * Checks if the piece has moved.
      *
@@ -114,22 +90,6 @@ public abstract class AbstractPiece implements Piece
 	return findAllMoves(board).contains(square);
     }
 
-    /**
-     * Creates an enum map for the piece offsets.
-     *
-     * @return The enum map for the piece offsets.
-     */
-    private static EnumMap<PieceType, Offset> createOffsetMap() {
-	EnumMap<PieceType, Offset> pieceOffsets = new EnumMap<>(PieceType.class);
-	pieceOffsets.put(PieceType.KING, Offset.KING);
-	pieceOffsets.put(PieceType.BISHOP, Offset.BISHOP);
-	pieceOffsets.put(PieceType.KNIGHT, Offset.KNIGHT);
-	pieceOffsets.put(PieceType.PAWN, Offset.PAWN);
-	pieceOffsets.put(PieceType.QUEEN, Offset.QUEEN);
-	pieceOffsets.put(PieceType.ROOK, Offset.ROOK);
-	return pieceOffsets;
-    }
-
     /**
      * Checks if it is the player's turn to move.
      *
@@ -147,94 +107,48 @@ public abstract class AbstractPiece implements Piece
     }
 
     /**
-     * Finds all possible moves for the piece on the given board.
+     * Finds all legal moves for the piece on the given board.
      *
      * @param board The current state of the chess board.
      *
-     * @return A list of all possible moves for the piece.
+     * @return A list of all legal target squares for the piece, including castling and en passant.
      */
     public List<Integer> findAllMoves(Board board) {
-	boolean copyHasMoved = this.hasMoved;
-	int startPos = this.pos;
-	List<Integer> movesToTest = getPossibleMoves(board);
-	List<Integer> possibleMoves = new ArrayList<>();
-	for (Integer move : movesToTest) {
-	    Board copy = new Board(board);
-	    copy.movePiece(startPos, move, false);
-	    if (!copy.findAllPossibleMoves(getOpponentColor()).contains(copy.getKingPos(this.color)))
-		possibleMoves.add(move);
-	    this.hasMoved = copyHasMoved;
-	    this.pos = startPos;
+	long targets = new MoveGenerator(board).getLegalTargets(pos);
+	List<Integer> possibleMoves = new ArrayList<>(Long.bitCount(targets));
+	for (; targets != 0; targets &= targets - 1) {
+	    possibleMoves.add(Long.numberOfTrailingZeros(targets));
 	}
-	possibleMoves.addAll(findSpecialMoves(board));
 	return possibleMoves;
     }
 
     /**
-     * Finds the special moves for the piece on the given board.
+     * Adds all legal moves for the piece on the given board to a list, without boxing.
      *
      * @param board The current state of the chess board.
-     *
-     * @return A list of special moves for the piece.
+     * @param moves The list to add the encoded moves to, one per promotion type for promotions.
      */
-    private List<Integer> findSpecialMoves(Board board) {
-	List<Integer> specialMoves = new ArrayList<>();
-	if (this.getType() == PieceType.KING && this.isPlayersTurn(board.isWhiteToMove())) {
-	    if (canCastleQueenSide(board))
-		specialMoves.add(pos - 2);
-	    if (canCastleKingSide(board))
-		specialMoves.add(pos + 2);
-	}
-	if (this.getType() == PieceType.PAWN && this.isPlayersTurn(board.isWhiteToMove())) {
-	    if (color == PieceColor.WHITE) {
-		if (canEnPassantRight(board))
-		    specialMoves.add(pos - 7);
-		if (canEnPassantLeft(board))
-		    specialMoves.add(pos - 9);
-	    }
-	    if (color == PieceColor.BLACK) {
-		if (canEnPassantRight(board))
-		    specialMoves.add(pos + 9);
-		if (canEnPassantLeft(board))
-		    specialMoves.add(pos + 7);
-	    }
-	}
-
-	return specialMoves;
+    public void findAllMoves(Board board, MoveList moves) {
+	new MoveGenerator(board).generateLegalMoves(pos, moves);
     }
 
     /**
-     * Checks if the pawn can perform en passant capture to the right.
+     * Finds the possible moves for the piece without checking if they leave the king in check.
      *
      * @param board The current state of the chess board.
      *
-     * @return True if en passant capture to the right is possible, false otherwise.
+     * @return A list of the target squares.
      */
-    private boolean canEnPassantRight(Board board) {
-	Piece rightOfPawn = board.getPieceAt(pos + 1);
-	if (rightOfPawn instanceof Pawn && rightOfPawn.getColor() == getOpponentColor()) {
-	    Move lastMove = board.getLastMove();
-	    if (lastMove.getTo() == pos + 1 && Math.abs(lastMove.getTo() - lastMove.getFrom()) == 16)
-		return true;
+    public List<Integer> getPossibleMoves(Board board) {
+	MoveList moves = new MoveList();
+	getPossibleMoves(board, moves);
+	List<Integer> possibleMoves = new ArrayList<>(moves.size());
+	for (int i = 0; i < moves.size(); i++) {
+	    int move = moves.get(i);
+	    // A promotion is one target square however many piece types it offers
+	    if (!Move.isPromotion(move) || Move.getPromotion(move) == PieceType.QUEEN) possibleMoves.add(Move.getTo(move));
 	}
-	return false;
-    }
-
-    /**
-     * Checks if the pawn can perform en passant capture to the left.
-     *
-     * @param board The current state of the chess board.
-     *
-     * @return True if en passant capture to the left is possible, false otherwise.
-     */
-    private boolean canEnPassantLeft(Board board) {
-	Piece rightOfPawn = board.getPieceAt(pos - 1);
-	if (rightOfPawn instanceof Pawn && rightOfPawn.getColor() == getOpponentColor()) {
-	    Move lastMove = board.getLastMove();
-	    if (lastMove.getTo() == pos - 1 && Math.abs(lastMove.getTo() - lastMove.getFrom()) == 16)
-		return true;
-	}
-	return false;
+	return possibleMoves;
     }
 
     /**
@@ -245,20 +159,7 @@ public abstract class AbstractPiece implements Piece
      * @return True if king-side castle is possible, false otherwise.
      */
     public boolean canCastleKingSide(Board board) {
-	if (hasMoved)
-	    return false;
-	Piece cornerPiece = board.getPieceAt(pos + 3);
-	if (cornerPiece instanceof Rook && !cornerPiece.hasMoved()) {
-	    List<Integer> opponentsMoves = board.findAllPossibleMoves(getOpponentColor());
-	    for (int i = 1; i < 3; i++) {
-		if (board.getPieceAt(pos + i) != null)
-		    return false;
-		if (opponentsMoves.contains(pos + i))
-		    return false;
-	    }
-	    return true;
-	}
-	return false;
+	return type == PieceType.KING && board.canCastle(color, true);
     }
 
     /**
@@ -269,20 +170,7 @@ public abstract class AbstractPiece implements Piece
      * @return True if queen-side castle is possible, false otherwise.
      */
     public boolean canCastleQueenSide(Board board) {
-	if (hasMoved)
-	    return false;
-	Piece cornerPiece = board.getPieceAt(pos - 4);
-	if (cornerPiece instanceof Rook && !cornerPiece.hasMoved()) {
-	    List<Integer> opponentsMoves = board.findAllPossibleMoves(getOpponentColor());
-	    for (int i = 1; i < 4; i++) {
-		if (board.getPieceAt(pos - i) != null)
-		    return false;
-		if (opponentsMoves.contains(pos - i))
-		    return false;
-	    }
-	    return true;
-	}
-	return false;
+	return type == PieceType.KING && board.canCastle(color, false);
     }
 
     /**
@@ -0,0 +1,201 @@
+package se.liu.marfr380;
+
+/**
+ * Attack bitboards for all piece types, using the same square numbering as {@link Board}.
+ * <p>
+ * All tables are built once when the class is loaded, so no lookup needs to check for wrapping around the edge of the
+ * board. Knight, king and pawn attacks are looked up directly. For rook and bishop attacks there is a ray per square
+ * and direction, running to the edge of the board. The attacks along a ray are the ray minus the ray behind its first
+ * occupied square, which is found with a single bit scan: the lowest set bit for the directions towards higher square
+ * numbers and the highest for the others.
+ */
+public final class Attacks
+{
+    private final static int SQUARES = 64;
+    private final static int[][] KNIGHT_STEPS = { { -2, -1 }, { -2, 1 }, { -1, -2 }, { -1, 2 }, { 1, -2 }, { 1, 2 }, { 2, -1 }, { 2, 1 } };
+    private final static int[][] KING_STEPS = { { -1, -1 }, { -1, 0 }, { -1, 1 }, { 0, -1 }, { 0, 1 }, { 1, -1 }, { 1, 0 }, { 1, 1 } };
+    /**
+     * The eight directions as row and column steps. The first four go towards higher square numbers, the last four
+     * towards lower ones, and the rook directions have even indices.
+     */
+    private final static int[][] DIRECTIONS = {
+            { 1, 0 }, { 1, -1 }, { 0, 1 }, { 1, 1 }, { -1, 0 }, { -1, 1 }, { 0, -1 }, { -1, -1 } };
+    private final static int[] ROOK_DIRECTIONS = { 0, 2, 4, 6 };
+    private final static int[] BISHOP_DIRECTIONS = { 1, 3, 5, 7 };
+    private final static int FIRST_NEGATIVE_DIRECTION = 4;
+
+    private final static long[] KNIGHT_ATTACKS = createStepAttacks(KNIGHT_STEPS);
+    private final static long[] KING_ATTACKS = createStepAttacks(KING_STEPS);
+    private final static long[][] PAWN_ATTACKS = {
+            createStepAttacks(new int[][] { { -1, -1 }, { -1, 1 } }),
+            createStepAttacks(new int[][] { { 1, -1 }, { 1, 1 } }) };
+    private final static long[][] RAYS = createRays();
+    private final static long[][] BETWEEN = new long[SQUARES][SQUARES];
+    private final static long[][] LINE = new long[SQUARES][SQUARES];
+
+    static {
+        createLines();
+    }
+
+    private Attacks() {}
+
+    /**
+     * Returns the squares a knight on the given square attacks.
+     *
+     * @param square The square of the knight.
+     *
+     * @return The attacked squares as a bitboard.
+     */
+    public static long knight(int square) {
+        return KNIGHT_ATTACKS[square];
+    }
+
+    /**
+     * Returns the squares a king on the given square attacks.
+     *
+     * @param square The square of the king.
+     *
+     * @return The attacked squares as a bitboard.
+     */
+    public static long king(int square) {
+        return KING_ATTACKS[square];
+    }
+
+    /**
+     * Returns the squares a pawn of the given color on the given square attacks diagonally.
+     *
+     * @param color  The color of the pawn.
+     * @param square The square of the pawn.
+     *
+     * @return The attacked squares as a bitboard.
+     */
+    public static long pawn(PieceColor color, int square) {
+        return PAWN_ATTACKS[color.ordinal()][square];
+    }
+
+    /**
+     * Returns the squares a rook on the given square attacks. Each ray stops at, and includes, the first occupied
+     * square.
+     *
+     * @param square   The square of the rook.
+     * @param occupied The occupied squares.
+     *
+     * @return The attacked squares as a bitboard.
+     */
+    public static long rook(int square, long occupied) {
+        return slide(square, occupied, ROOK_DIRECTIONS);
+    }
+
+    /**
+     * Returns the squares a bishop on the given square attacks. Each ray stops at, and includes, the first occupied
+     * square.
+     *
+     * @param square   The square of the bishop.
+     * @param occupied The occupied squares.
+     *
+     * @return The attacked squares as a bitboard.
+     */
+    public static long bishop(int square, long occupied) {
+        return slide(square, occupied, BISHOP_DIRECTIONS);
+    }
+
+    /**
+     * Returns the squares a queen on the given square attacks.
+     *
+     * @param square   The square of the queen.
+     * @param occupied The occupied squares.
+     *
+     * @return The attacked squares as a bitboard.
+     */
+    public static long queen(int square, long occupied) {
+        return rook(square, occupied) | bishop(square, occupied);
+    }
+
+    /**
+     * Returns the squares strictly between two squares on the same row, column or diagonal.
+     *
+     * @param from The first square.
+     * @param to   The second square.
+     *
+     * @return The squares in between, or 0 if the squares are not aligned.
+     */
+    public static long between(int from, int to) {
+        return BETWEEN[from][to];
+    }
+
+    /**
+     * Returns the whole row, column or diagonal through two aligned squares, from edge to edge.
+     *
+     * @param from The first square.
+     * @param to   The second square.
+     *
+     * @return The line through both squares, or 0 if the squares are not aligned.
+     */
+    public static long line(int from, int to) {
+        return LINE[from][to];
+    }
+
+    /**
+     * Returns the squares along the rays in the given directions up to and including the first occupied square.
+     */
+    private static long slide(int square, long occupied, int[] directions) {
+        long attacks = 0L;
+        for (int direction : directions) {
+            long ray = RAYS[direction][square];
+            long blockers = ray & occupied;
+            if (blockers != 0) {
+                int blocker = direction < FIRST_NEGATIVE_DIRECTION ? Long.numberOfTrailingZeros(blockers)
+                                                                   : 63 - Long.numberOfLeadingZeros(blockers);
+                ray ^= RAYS[direction][blocker];
+            }
+            attacks |= ray;
+        }
+        return attacks;
+    }
+
+    private static long[] createStepAttacks(int[][] steps) {
+        long[] attacks = new long[SQUARES];
+        for (int square = 0; square < SQUARES; square++) {
+            for (int[] step : steps) {
+                int r = square / 8 + step[0];
+                int c = square % 8 + step[1];
+                if (isOnBoard(r, c)) attacks[square] |= 1L << (r * 8 + c);
+            }
+        }
+        return attacks;
+    }
+
+    private static long[][] createRays() {
+        long[][] rays = new long[DIRECTIONS.length][SQUARES];
+        for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+            for (int square = 0; square < SQUARES; square++) {
+                int r = square / 8 + DIRECTIONS[direction][0];
+                int c = square % 8 + DIRECTIONS[direction][1];
+                while (isOnBoard(r, c)) {
+                    rays[direction][square] |= 1L << (r * 8 + c);
+                    r += DIRECTIONS[direction][0];
+                    c += DIRECTIONS[direction][1];
+                }
+            }
+        }
+        return rays;
+    }
+
+    private static void createLines() {
+        for (int square = 0; square < SQUARES; square++) {
+            for (int direction = 0; direction < DIRECTIONS.length; direction++) {
+                int opposite = (direction + FIRST_NEGATIVE_DIRECTION) % DIRECTIONS.length;
+                long fullLine = 1L << square | RAYS[direction][square] | RAYS[opposite][square];
+                for (long targets = RAYS[direction][square]; targets != 0; targets &= targets - 1) {
+                    int target = Long.numberOfTrailingZeros(targets);
+                    BETWEEN[square][target] = RAYS[direction][square] & ~RAYS[direction][target] & ~(1L << target);
+                    LINE[square][target] = fullLine;
+                }
+            }
+        }
+    }
+
+    private static boolean isOnBoard(int row, int column) {
+        return row >= 0 && row < 8 && column >= 0 && column < 8;
+    }
+}
@@ -1,25 +1,105 @@
 package se.liu.marfr380;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
  * Represents a chess board.
+ * <p>
+ * The position is stored as 64-bit bitboards, one per piece type and color, together with an occupancy bitboard per
+ * color and one for the whole board. Bit {@code n} of a bitboard corresponds to square {@code n}, where square 0 is
+ * the top left corner (a8) and square 63 the bottom right corner (h1). Piece objects are only created as views when
+ * they are asked for through {@link #getPieceAt(int)}.
+ * <p>
+ * For each color the board also keeps how many of its pieces attack every square. The counts are updated whenever a
+ * piece is placed or removed: the piece's own attacks are added or subtracted, and only the sliding pieces whose rays
+ * reach the changed square are recomputed. This makes {@link #isSquareAttacked(int, PieceColor)} a constant time
+ * lookup.
+ * <p>
+ * The board also maintains a Zobrist key of the position, see {@link #getZobristKey()}, by toggling the numbers for
+ * the pieces, castling rights and side to move that each change affects.
+ * <p>
+ * Moves are made as encoded {@code int}s, see {@link Move}, whose flags tell the board whether a move castles, captures
+ * en passant or promotes. Every move is recorded on an undo stack as a packed {@code long} holding the move together
+ * with the castling rights, the en passant square, the halfmove clock and the previous moved status of the squares
+ * involved, so that {@link #unmakeMove()} can restore the previous position in place without copying the board.
  */
 public class Board
 {
-    private final static String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR";
+    /**
+     * The start position in FEN.
+     */
+    public final static String START_FEN = "rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1";
     private final static int ROWS = 8;
     private final static int COLUMNS = 8;
+    private final static int SQUARES = ROWS * COLUMNS;
+
+    /**
+     * Piece code of an empty square. Occupied squares have the code returned by {@link #toPieceCode}.
+     */
+    public final static int EMPTY = 0;
+    private final static int PIECE_TYPES = PieceType.values().length;
+    private final static PieceType[] TYPES = PieceType.values();
+    private final static PieceColor[] COLORS = PieceColor.values();
+    private final static int WHITE_PAWN = 1 + PieceType.PAWN.ordinal();
+    private final static int BLACK_PAWN = WHITE_PAWN + PIECE_TYPES;
+
+    /**
+     * Castling right bits, as returned by {@link #getCastlingRights()}.
+     */
+    public final static int WHITE_KING_SIDE = 1, WHITE_QUEEN_SIDE = 2, BLACK_KING_SIDE = 4, BLACK_QUEEN_SIDE = 8;
+    private final static int ALL_CASTLING_RIGHTS = 15;
+    /**
+     * Square value used when there is no en passant square.
+     */
+    public final static int NO_SQUARE = -1;
+    private final static int[] CASTLING_MASKS = createCastlingMasks();
+
+    private final static int UNDO_CASTLING_SHIFT = 32;
+    private final static int UNDO_EN_PASSANT_SHIFT = 36;
+    private final static long UNDO_FROM_UNMOVED = 1L << 43;
+    private final static long UNDO_TO_UNMOVED = 1L << 44;
+    private final static long UNDO_ROOK_UNMOVED = 1L << 45;
+    private final static int UNDO_HALFMOVE_SHIFT = 46;
+    private final static int MAX_HALFMOVE_CLOCK = 0xFFFF;
+    private final static int INITIAL_UNDO_CAPACITY = 32;
+    private final static int FIFTY_MOVE_PLIES = 100;
+    private final static int REPETITIONS_FOR_DRAW = 3;
+    private final static long LIGHT_SQUARES = 0xAA55_AA55_AA55_AA55L;
 
-    public Piece upForPromotion = null;
-    public int promotionMenuStartSquare;
-    public PieceType promotionType = null;
-    public boolean hasPressed = false;
+    private Piece upForPromotion = null;
+    private int promotionMenuStartSquare;
 
     private Move lastMove = null;
 
-    private Piece[] board = new Piece[ROWS * COLUMNS];
+    private final long[] pieceBitboards = new long[PIECE_TYPES * COLORS.length + 1];
+    private final long[] colorBitboards = new long[COLORS.length];
+    private long occupied = 0L;
+    private long unmovedPieces = 0L;
+    private int castlingRights = 0;
+    private int enPassantSquare = NO_SQUARE;
+    private int halfmoveClock = 0;
+    private int fullmoveNumber = 1;
+
+    private long zobristKey = 0L;
+    private long pawnKey = 0L;
+    private int material = 0;
+    private int middlegameScore = 0;
+    private int endgameScore = 0;
+    private int phase = 0;
+
+    private long[] undoStack = new long[INITIAL_UNDO_CAPACITY];
+    private long[] keyHistory = new long[INITIAL_UNDO_CAPACITY];
+    // The full keys of getZobristKey(), with the en passant file, to find repeated positions
+    private long[] positionKeyHistory = new long[INITIAL_UNDO_CAPACITY];
+    private int undoCount = 0;
+
+    private final long[] pieceAttacks = new long[SQUARES];
+    private final byte[] attackCounts = new byte[SQUARES * COLORS.length];
+    private final long[] attackedSquares = new long[COLORS.length];
+
+    private Piece[] pieceViews = null;
 
     private boolean whiteToMove = true;
 
@@ -32,12 +112,33 @@ public class Board
     }
 
     /**
-     * Constructs a new board by copying the state of another board.
+     * Constructs a new board by copying the position of another board. The copy shares no mutable state with the
+     * original, so the two can be used by different threads.
      *
      * @param board The board object to copy.
      */
     public Board(Board board) {
-        this.board = board.getBoard();
+        System.arraycopy(board.pieceBitboards, 0, pieceBitboards, 0, pieceBitboards.length);
+        System.arraycopy(board.colorBitboards, 0, colorBitboards, 0, colorBitboards.length);
+        System.arraycopy(board.pieceAttacks, 0, pieceAttacks, 0, SQUARES);
+        System.arraycopy(board.attackCounts, 0, attackCounts, 0, attackCounts.length);
+        System.arraycopy(board.attackedSquares, 0, attackedSquares, 0, attackedSquares.length);
+        this.occupied = board.occupied;
+        this.unmovedPieces = board.unmovedPieces;
+        this.castlingRights = board.castlingRights;
+        this.enPassantSquare = board.enPassantSquare;
+        this.halfmoveClock = board.halfmoveClock;
+        this.fullmoveNumber = board.fullmoveNumber;
+        this.zobristKey = board.zobristKey;
+        this.pawnKey = board.pawnKey;
+        this.material = board.material;
+        this.middlegameScore = board.middlegameScore;
+        this.endgameScore = board.endgameScore;
+        this.phase = board.phase;
+        this.undoStack = Arrays.copyOf(board.undoStack, board.undoStack.length);
+        this.keyHistory = Arrays.copyOf(board.keyHistory, board.keyHistory.length);
+        this.positionKeyHistory = Arrays.copyOf(board.positionKeyHistory, board.positionKeyHistory.length);
+        this.undoCount = board.undoCount;
         this.whiteToMove = board.isWhiteToMove();
     }
 
@@ -60,21 +161,90 @@ public class Board
     }
 
     /**
-     * Returns a clone of the internal board array.
+     * Returns the piece code used in the bitboard arrays for a piece of the given type and color.
+     *
+     * @param type  The type of the piece.
+     * @param color The color of the piece.
+     *
+     * @return The piece code, never {@link #EMPTY}.
+     */
+    public static int toPieceCode(PieceType type, PieceColor color) {
+        return 1 + color.ordinal() * PIECE_TYPES + type.ordinal();
+    }
+
+    /**
+     * Returns the piece type of a piece code.
+     *
+     * @param code A piece code other than {@link #EMPTY}.
      *
-     * @return A clone of the board array.
+     * @return The type of the piece.
+     */
+    public static PieceType typeOfCode(int code) {
+        return TYPES[(code - 1) % PIECE_TYPES];
+    }
+
+    /**
+     * Returns the piece color of a piece code.
+     *
+     * @param code A piece code other than {@link #EMPTY}.
+     *
+     * @return The color of the piece.
+     */
+    public static PieceColor colorOfCode(int code) {
+        return COLORS[(code - 1) / PIECE_TYPES];
+    }
+
+    /**
+     * Returns a copy of the board as an array of pieces, indexed by square.
+     *
+     * @return An array containing the piece on each square, or null for empty squares.
      */
     public Piece[] getBoard() {
-        return board.clone();
+        Piece[] pieces = new Piece[SQUARES];
+        for (long bits = occupied; bits != 0; bits &= bits - 1) {
+            int square = Long.numberOfTrailingZeros(bits);
+            pieces[square] = getPieceAt(square);
+        }
+        return pieces;
     }
 
     /**
-     * Clears the chess board by setting all squares to null.
+     * Clears the chess board by removing all pieces.
      */
     public void emptyBoard() {
-        for (int i = 0; i < ROWS * COLUMNS; i++) {
-            board[i] = null;
+        for (int i = 0; i < pieceBitboards.length; i++) {
+            pieceBitboards[i] = 0L;
+        }
+        for (int i = 0; i < colorBitboards.length; i++) {
+            colorBitboards[i] = 0L;
+            attackedSquares[i] = 0L;
         }
+        Arrays.fill(pieceAttacks, 0L);
+        Arrays.fill(attackCounts, (byte) 0);
+        occupied = 0L;
+        unmovedPieces = 0L;
+        castlingRights = 0;
+        enPassantSquare = NO_SQUARE;
+        halfmoveClock = 0;
+        fullmoveNumber = 1;
+        zobristKey = whiteToMove ? 0L : Zobrist.blackToMove();
+        pawnKey = 0L;
+        material = 0;
+        middlegameScore = 0;
+        endgameScore = 0;
+        phase = 0;
+        undoCount = 0;
+    }
+
+    /**
+     * Puts a piece on an empty square while setting up a position. The piece counts as unmoved.
+     *
+     * @param code   The piece code, see {@link #toPieceCode}.
+     * @param square The square, which must be empty.
+     */
+    public void placePiece(int code, int square) {
+        putPiece(code, square);
+        unmovedPieces |= bit(square);
     }
 
     /**
@@ -85,16 +255,337 @@ public class Board
      * @return The piece at the specified square, or null if there is no piece.
      */
     public Piece getPieceAt(int square) {
-        return board[square];
+        int code = getPieceCodeAt(square);
+        if (code == EMPTY) return null;
+        // Only the user interface asks for piece objects, so boards that are never shown do not allocate the views
+        if (pieceViews == null) pieceViews = new Piece[SQUARES];
+        Piece view = pieceViews[square];
+        boolean moved = (unmovedPieces & bit(square)) == 0;
+        if (view == null || view.getType() != typeOfCode(code) || view.getColor() != colorOfCode(code) ||
+            view.hasMoved() != moved) {
+            view = createPiece(typeOfCode(code), colorOfCode(code), square);
+            if (moved) view.setMoveStatus();
+            pieceViews[square] = view;
+        }
+        return view;
+    }
+
+    /**
+     * Returns the code of the piece at the specified square.
+     *
+     * @param square The square index.
+     *
+     * @return The piece code, or {@link #EMPTY} if there is no piece on the square.
+     */
+    public int getPieceCodeAt(int square) {
+        long squareBit = bit(square);
+        if ((occupied & squareBit) == 0) return EMPTY;
+        int first = (colorBitboards[PieceColor.WHITE.ordinal()] & squareBit) != 0 ? 1 : 1 + PIECE_TYPES;
+        for (int code = first; code < first + PIECE_TYPES; code++) {
+            if ((pieceBitboards[code] & squareBit) != 0) return code;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Checks if there is a piece on the specified square.
+     *
+     * @param square The square index.
+     *
+     * @return True if the square is occupied, false otherwise.
+     */
+    public boolean isOccupied(int square) {
+        return (occupied & bit(square)) != 0;
+    }
+
+    /**
+     * Returns the color of the piece on the specified square.
+     *
+     * @param square The square index.
+     *
+     * @return The color of the piece, or null if the square is empty.
+     */
+    public PieceColor getColorAt(int square) {
+        long squareBit = bit(square);
+        if ((colorBitboards[PieceColor.WHITE.ordinal()] & squareBit) != 0) return PieceColor.WHITE;
+        if ((colorBitboards[PieceColor.BLACK.ordinal()] & squareBit) != 0) return PieceColor.BLACK;
+        return null;
+    }
+
+    /**
+     * Returns the bitboard of all pieces of the given type and color.
+     *
+     * @param type  The type of the pieces.
+     * @param color The color of the pieces.
+     *
+     * @return A bitboard with one bit set for every such piece.
+     */
+    public long getPieces(PieceType type, PieceColor color) {
+        return pieceBitboards[toPieceCode(type, color)];
+    }
+
+    /**
+     * Returns the bitboard of all pieces of the given color.
+     *
+     * @param color The color of the pieces.
+     *
+     * @return A bitboard with one bit set for every piece of that color.
+     */
+    public long getPieces(PieceColor color) {
+        return colorBitboards[color.ordinal()];
+    }
+
+    /**
+     * Returns the bitboard of all occupied squares.
+     *
+     * @return A bitboard with one bit set for every piece on the board.
+     */
+    public long getOccupied() {
+        return occupied;
+    }
+
+    /**
+     * Returns the castling rights that are still available.
+     *
+     * @return A combination of the {@link #WHITE_KING_SIDE}, {@link #WHITE_QUEEN_SIDE}, {@link #BLACK_KING_SIDE} and
+     * {@link #BLACK_QUEEN_SIDE} bits.
+     */
+    public int getCastlingRights() {
+        return castlingRights;
+    }
+
+    /**
+     * Checks if a player may still castle to the given side, i.e. neither the king nor that rook has moved.
+     *
+     * @param color    The color of the player.
+     * @param kingSide True for king side castling, false for queen side castling.
+     *
+     * @return True if the castling right is still available.
+     */
+    public boolean hasCastlingRight(PieceColor color, boolean kingSide) {
+        int right;
+        if (color == PieceColor.WHITE) right = kingSide ? WHITE_KING_SIDE : WHITE_QUEEN_SIDE;
+        else right = kingSide ? BLACK_KING_SIDE : BLACK_QUEEN_SIDE;
+        return (castlingRights & right) != 0;
+    }
+
+    /**
+     * Sets the castling rights that are still available.
+     *
+     * @param castlingRights A combination of the castling right bits.
+     */
+    public void setCastlingRights(final int castlingRights) {
+        zobristKey ^= Zobrist.castling(this.castlingRights);
+        this.castlingRights = castlingRights & ALL_CASTLING_RIGHTS;
+        zobristKey ^= Zobrist.castling(this.castlingRights);
+    }
+
+    /**
+     * Returns a Zobrist key of the pawns alone, the XOR of the numbers of every pawn on its square. It only changes when
+     * a pawn moves, is captured or promotes, which makes it the key of the {@link PawnHashTable}.
+     *
+     * @return The 64-bit pawn key, 0 without pawns.
+     */
+    public long getPawnKey() {
+        return pawnKey;
+    }
+
+    /**
+     * Returns the material balance, kept up to date as pieces are put and removed, see {@link Evaluation}.
+     *
+     * @return White's material minus black's, in centipawns.
+     */
+    public int getMaterial() {
+        return material;
+    }
+
+    /**
+     * Returns the sum of the middlegame piece-square scores, see {@link Evaluation}.
+     *
+     * @return White's sum minus black's, in centipawns.
+     */
+    public int getMiddlegameScore() {
+        return middlegameScore;
+    }
+
+    /**
+     * Returns the sum of the endgame piece-square scores, see {@link Evaluation}.
+     *
+     * @return White's sum minus black's, in centipawns.
+     */
+    public int getEndgameScore() {
+        return endgameScore;
+    }
+
+    /**
+     * Returns the game phase, see {@link Evaluation}.
+     *
+     * @return The sum of the phase weights of all pieces on the board.
+     */
+    public int getPhase() {
+        return phase;
+    }
+
+    /**
+     * Returns the Zobrist key of the position. It covers the pieces, the side to move, the castling rights and the file
+     * of the en passant square when a pawn of the side to move can actually capture there, so positions that only
+     * differ in an unusable en passant square get the same key.
+     *
+     * @return The 64-bit key.
+     */
+    public long getZobristKey() {
+        if (enPassantSquare == NO_SQUARE) return zobristKey;
+        PieceColor mover = whiteToMove ? PieceColor.WHITE : PieceColor.BLACK;
+        PieceColor opponent = whiteToMove ? PieceColor.BLACK : PieceColor.WHITE;
+        if ((Attacks.pawn(opponent, enPassantSquare) & getPieces(PieceType.PAWN, mover)) == 0) return zobristKey;
+        return zobristKey ^ Zobrist.enPassant(getColumnAtSquare(enPassantSquare));
+    }
+
+    /**
+     * Sets the square a pawn passed over with a double step in the last move.
+     *
+     * @param enPassantSquare The en passant square, or {@link #NO_SQUARE}.
+     */
+    public void setEnPassantSquare(final int enPassantSquare) {
+        this.enPassantSquare = enPassantSquare;
+    }
+
+    /**
+     * Returns the number of half moves since the last capture or pawn move, for the fifty-move rule.
+     *
+     * @return The halfmove clock.
+     */
+    public int getHalfmoveClock() {
+        return halfmoveClock;
+    }
+
+    /**
+     * Sets the number of half moves since the last capture or pawn move.
+     *
+     * @param halfmoveClock The halfmove clock, clamped to the range the board can store.
+     */
+    public void setHalfmoveClock(final int halfmoveClock) {
+        this.halfmoveClock = Math.min(Math.max(halfmoveClock, 0), MAX_HALFMOVE_CLOCK);
+    }
+
+    /**
+     * Returns the number of the current full move. It starts at 1 and increases after every move of black.
+     *
+     * @return The fullmove number.
+     */
+    public int getFullmoveNumber() {
+        return fullmoveNumber;
+    }
+
+    /**
+     * Sets the number of the current full move.
+     *
+     * @param fullmoveNumber The fullmove number. Numbers below 1 are set to 1.
+     */
+    public void setFullmoveNumber(final int fullmoveNumber) {
+        this.fullmoveNumber = Math.max(fullmoveNumber, 1);
+    }
+
+    /**
+     * Returns the square a pawn passed over with a double step in the last move.
+     *
+     * @return The en passant square, or {@link #NO_SQUARE} if the last move was not a pawn double step.
+     */
+    public int getEnPassantSquare() {
+        return enPassantSquare;
+    }
+
+    /**
+     * Checks if any piece of the given color attacks a square.
+     *
+     * @param square  The square.
+     * @param byColor The color of the attacking pieces.
+     *
+     * @return True if the square is attacked.
+     */
+    public boolean isSquareAttacked(int square, PieceColor byColor) {
+        return (attackedSquares[byColor.ordinal()] & bit(square)) != 0;
+    }
+
+    /**
+     * Returns all squares attacked by the pieces of the given color.
+     *
+     * @param byColor The color of the attacking pieces.
+     *
+     * @return A bitboard of the attacked squares.
+     */
+    public long getAttackedSquares(PieceColor byColor) {
+        return attackedSquares[byColor.ordinal()];
     }
 
     /**
-     * Sets the internal board array with the specified board.
+     * Checks if the king of the given color is attacked.
+     *
+     * @param color The color of the king.
+     *
+     * @return True if the king is in check.
+     */
+    public boolean isInCheck(PieceColor color) {
+        PieceColor opponent = color == PieceColor.WHITE ? PieceColor.BLACK : PieceColor.WHITE;
+        return (getPieces(PieceType.KING, color) & attackedSquares[opponent.ordinal()]) != 0;
+    }
+
+    /**
+     * Checks if a player can castle to the given side right now: the castling right is still available, the squares
+     * between king and rook are empty, and the king is not in check and does not pass over or land on an attacked
+     * square.
+     *
+     * @param color    The color of the player.
+     * @param kingSide True for king side castling, false for queen side castling.
+     *
+     * @return True if the castling move is legal.
+     */
+    public boolean canCastle(PieceColor color, boolean kingSide) {
+        if (!hasCastlingRight(color, kingSide)) return false;
+        int kingSquare = color == PieceColor.WHITE ? 60 : 4;
+        int rookSquare = kingSide ? kingSquare + 3 : kingSquare - 4;
+        if ((getPieces(PieceType.ROOK, color) & bit(rookSquare)) == 0) return false;
+        if ((getPieces(PieceType.KING, color) & bit(kingSquare)) == 0) return false;
+        if ((Attacks.between(kingSquare, rookSquare) & occupied) != 0) return false;
+        int direction = kingSide ? 1 : -1;
+        long kingPath = bit(kingSquare) | bit(kingSquare + direction) | bit(kingSquare + 2 * direction);
+        PieceColor opponent = color == PieceColor.WHITE ? PieceColor.BLACK : PieceColor.WHITE;
+        return (kingPath & attackedSquares[opponent.ordinal()]) == 0;
+    }
+
+    /**
+     * Returns the pieces of the given color that attack a square, treating the given squares as occupied.
+     *
+     * @param square    The attacked square.
+     * @param byColor   The color of the attacking pieces.
+     * @param occupancy The occupied squares to use for sliding pieces, which may differ from the actual occupancy.
+     *
+     * @return A bitboard of the attacking pieces.
+     */
+    public long getAttackers(int square, PieceColor byColor, long occupancy) {
+        PieceColor defender = byColor == PieceColor.WHITE ? PieceColor.BLACK : PieceColor.WHITE;
+        long queens = getPieces(PieceType.QUEEN, byColor);
+        return (Attacks.pawn(defender, square) & getPieces(PieceType.PAWN, byColor)) |
+               (Attacks.knight(square) & getPieces(PieceType.KNIGHT, byColor)) |
+               (Attacks.king(square) & getPieces(PieceType.KING, byColor)) |
+               (Attacks.rook(square, occupancy) & (getPieces(PieceType.ROOK, byColor) | queens)) |
+               (Attacks.bishop(square, occupancy) & (getPieces(PieceType.BISHOP, byColor) | queens));
+    }
+
+    /**
+     * Sets the contents of the board from an array of pieces indexed by square.
      *
      * @param board The board array to set.
      */
     public void setBoard(final Piece[] board) {
-        this.board = board;
+        emptyBoard();
+        for (int square = 0; square < board.length; square++) {
+            Piece piece = board[square];
+            if (piece == null) continue;
+            putPiece(toPieceCode(piece.getType(), piece.getColor()), square);
+            if (!piece.hasMoved()) unmovedPieces |= bit(square);
+        }
+        setCastlingRights(castlingRightsFromUnmovedPieces());
     }
 
     /**
@@ -116,38 +607,190 @@ public class Board
     }
 
     /**
-     * Moves a piece from the specified source square to the specified target square.
+     * Moves a piece from the specified source square to the specified target square. A pawn that reaches the last row
+     * becomes a queen.
      *
      * @param fromSquare The source square.
      * @param toSquare   The target square.
      * @param isRealMove Indicates if the move is a real move or just a temporary move for checking legality.
      */
     public void movePiece(final int fromSquare, final int toSquare, boolean isRealMove) {
-        Piece piece = getPieceAt(fromSquare);
-        if (piece instanceof King && Math.abs(fromSquare - toSquare) == 2) {
-            castle(fromSquare, toSquare);
+        int move = createMove(fromSquare, toSquare, PieceType.QUEEN);
+        makeMove(move);
+        if (isRealMove && Move.isPromotion(move)) {
+            promotionMenuStartSquare = toSquare;
+            upForPromotion = getPieceAt(toSquare);
         }
-        if (piece instanceof Pawn) {
-            if (Math.abs(fromSquare - toSquare) % 8 != 0 && getPieceAt(toSquare) == null) {
-                enPassant(fromSquare, toSquare);
-            } else if (piece.getColor() == PieceColor.BLACK && getRowAtSquare(toSquare) == 7) {
-                promotionType = PieceType.QUEEN;
-                upForPromotion = piece;
-                promotionMenuStartSquare = toSquare;
-                promote(piece, promotionType);
-            } else if (piece.getColor() == PieceColor.WHITE && getRowAtSquare(toSquare) == 0) {
-                promotionType = PieceType.QUEEN;
-                upForPromotion = piece;
-                promotionMenuStartSquare = toSquare;
-                promote(piece, promotionType);
+    }
+
+    /**
+     * Encodes the move of the piece on a square to another square in the current position, finding out what it
+     * captures and whether it castles, captures en passant or pushes a pawn two squares.
+     *
+     * @param fromSquare The source square.
+     * @param toSquare   The target square.
+     * @param promotion  The type a pawn that reaches the last row promotes to. It is ignored for other moves.
+     *
+     * @return The encoded move.
+     */
+    public int createMove(int fromSquare, int toSquare, PieceType promotion) {
+        int code = getPieceCodeAt(fromSquare);
+        PieceType type = typeOfCode(code);
+        int captured = getPieceCodeAt(toSquare);
+        int flags = 0;
+        if (type == PieceType.KING && Math.abs(fromSquare - toSquare) == 2) {
+            flags = Move.CASTLING;
+        } else if (type == PieceType.PAWN) {
+            if (Math.abs(fromSquare - toSquare) == 16) {
+                flags = Move.DOUBLE_PAWN_PUSH;
+            } else if (toSquare == enPassantSquare && getColumnAtSquare(fromSquare) != getColumnAtSquare(toSquare)) {
+                flags = Move.EN_PASSANT;
+                captured = getPieceCodeAt(enPassantCaptureSquare(fromSquare, toSquare));
             }
         }
+        boolean promotes = type == PieceType.PAWN && (getRowAtSquare(toSquare) == 0 || getRowAtSquare(toSquare) == ROWS - 1);
+        return Move.encode(fromSquare, toSquare, code, captured, promotes ? promotion : null, flags);
+    }
 
-        piece.setMoveStatus();
-        board[fromSquare] = null;
-        piece.setPos(toSquare);
-        board[toSquare] = piece;
+    /**
+     * Adds the moves of the piece on a square to each of the target squares to a list. A pawn that reaches the last row
+     * gets one move for every type it can promote to.
+     *
+     * @param fromSquare The source square.
+     * @param targets    The target squares as a bitboard.
+     * @param moves      The list to add the encoded moves to.
+     */
+    public void addMoves(int fromSquare, long targets, MoveList moves) {
+        for (; targets != 0; targets &= targets - 1) {
+            int move = createMove(fromSquare, Long.numberOfTrailingZeros(targets), PieceType.QUEEN);
+            moves.add(move);
+            if (Move.isPromotion(move)) {
+                moves.add(Move.withPromotion(move, PieceType.ROOK));
+                moves.add(Move.withPromotion(move, PieceType.BISHOP));
+                moves.add(Move.withPromotion(move, PieceType.KNIGHT));
+            }
+        }
+    }
+
+    /**
+     * Makes a move on the board. The move can be taken back with {@link #unmakeMove()}.
+     *
+     * @param move The move to make.
+     */
+    public void makeMove(Move move) {
+        makeMove(createMove(move.getFrom(), move.getTo(), PieceType.QUEEN));
+    }
+
+    /**
+     * Makes an encoded move on the board. The move must have been created for the current position, for example by
+     * {@link MoveGenerator} or {@link #createMove(int, int, PieceType)}. It can be taken back with {@link #unmakeMove()}.
+     *
+     * @param move The encoded move to make.
+     */
+    public void makeMove(int move) {
+        int fromSquare = Move.getFrom(move);
+        int toSquare = Move.getTo(move);
+        int code = Move.getPiece(move);
+        long undo = (move & 0xFFFFFFFFL) | (long) castlingRights << UNDO_CASTLING_SHIFT |
+                    (long) (enPassantSquare + 1) << UNDO_EN_PASSANT_SHIFT | (long) halfmoveClock << UNDO_HALFMOVE_SHIFT;
+        if ((unmovedPieces & bit(fromSquare)) != 0) undo |= UNDO_FROM_UNMOVED;
+        if ((unmovedPieces & bit(toSquare)) != 0) undo |= UNDO_TO_UNMOVED;
+        long keyBefore = zobristKey;
+        long positionKeyBefore = getZobristKey();
+
+        if (Move.isCastling(move)) {
+            undo |= castle(toSquare);
+        } else if (Move.isEnPassant(move)) {
+            removePiece(enPassantCaptureSquare(fromSquare, toSquare));
+        } else if (Move.isCapture(move)) {
+            removePiece(toSquare);
+        }
+        removePiece(fromSquare);
+        PieceType promotion = Move.getPromotion(move);
+        putPiece(promotion == null ? code : toPieceCode(promotion, colorOfCode(code)), toSquare);
+        unmovedPieces &= ~(bit(fromSquare) | bit(toSquare));
+        zobristKey ^= Zobrist.castling(castlingRights);
+        castlingRights &= CASTLING_MASKS[fromSquare] & CASTLING_MASKS[toSquare];
+        zobristKey ^= Zobrist.castling(castlingRights);
+        enPassantSquare = Move.isDoublePawnPush(move) ? (fromSquare + toSquare) / 2 : NO_SQUARE;
+        if (Move.isCapture(move) || typeOfCode(code) == PieceType.PAWN) halfmoveClock = 0;
+        else if (halfmoveClock < MAX_HALFMOVE_CLOCK) halfmoveClock++;
+        if (!whiteToMove) fullmoveNumber++;
+
+        pushUndo(undo, keyBefore, positionKeyBefore);
         whiteToMove = !whiteToMove;
+        zobristKey ^= Zobrist.blackToMove();
+    }
+
+    /**
+     * Takes back the last move made with {@link #makeMove(int)}, {@link #makeMove(Move)} or
+     * {@link #movePiece(int, int, boolean)}, restoring the captured piece, the castling rights, the en passant square
+     * and the moved status of the pieces.
+     */
+    public void unmakeMove() {
+        long undo = undoStack[--undoCount];
+        int move = (int) undo;
+        int fromSquare = Move.getFrom(move);
+        int toSquare = Move.getTo(move);
+        int captured = Move.getCaptured(move);
+        whiteToMove = !whiteToMove;
+
+        removePiece(toSquare);
+        putPiece(Move.getPiece(move), fromSquare);
+        if (Move.isEnPassant(move)) {
+            putPiece(captured, enPassantCaptureSquare(fromSquare, toSquare));
+        } else if (captured != EMPTY) {
+            putPiece(captured, toSquare);
+        }
+        if (Move.isCastling(move)) uncastle(toSquare, (undo & UNDO_ROOK_UNMOVED) != 0);
+
+        if ((undo & UNDO_FROM_UNMOVED) != 0) unmovedPieces |= bit(fromSquare);
+        if ((undo & UNDO_TO_UNMOVED) != 0) unmovedPieces |= bit(toSquare);
+        castlingRights = (int) (undo >>> UNDO_CASTLING_SHIFT) & ALL_CASTLING_RIGHTS;
+        enPassantSquare = (int) (undo >>> UNDO_EN_PASSANT_SHIFT & 127) - 1;
+        halfmoveClock = (int) (undo >>> UNDO_HALFMOVE_SHIFT) & MAX_HALFMOVE_CLOCK;
+        if (!whiteToMove) fullmoveNumber--;
+        zobristKey = keyHistory[undoCount];
+    }
+
+    private void pushUndo(long undo, long key, long positionKey) {
+        if (undoCount == undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoCount * 2);
+            keyHistory = Arrays.copyOf(keyHistory, undoCount * 2);
+            positionKeyHistory = Arrays.copyOf(positionKeyHistory, undoCount * 2);
+        }
+        keyHistory[undoCount] = key;
+        positionKeyHistory[undoCount] = positionKey;
+        undoStack[undoCount++] = undo;
+    }
+
+    /**
+     * Returns the piece that reached the last row in the last real move and still waits for the player to choose what
+     * it promotes to. Until then it has been promoted to a queen.
+     *
+     * @return The promoted piece, or null if no promotion is pending.
+     */
+    public Piece getPieceUpForPromotion() {
+        return upForPromotion;
+    }
+
+    /**
+     * Returns the square of the pending promotion, where the promotion menu starts.
+     *
+     * @return The square the pawn was promoted on.
+     */
+    public int getPromotionMenuStartSquare() {
+        return promotionMenuStartSquare;
+    }
+
+    /**
+     * Completes the pending promotion with the piece type the player chose.
+     *
+     * @param pieceType The type of piece to promote to.
+     */
+    public void completePromotion(PieceType pieceType) {
+        promote(upForPromotion, pieceType);
+        upForPromotion = null;
     }
 
     /**
@@ -157,52 +800,203 @@ public class Board
      * @param pieceType      The type of piece to promote to.
      */
     public void promote(Piece pieceToPromote, PieceType pieceType) {
-        int pos = pieceToPromote.getPos();
-        PieceColor color = pieceToPromote.getColor();
-        Piece piece;
-        switch (pieceType) {
-            case QUEEN -> piece = new Queen(pos, color);
-            case KNIGHT -> piece = new Knight(pos, color);
-            case ROOK -> piece = new Rook(pos, color);
-            case BISHOP -> piece = new Bishop(pos, color);
-            default -> piece = null;
+        promoteAt(pieceToPromote.getPos(), pieceType);
+    }
+
+    /**
+     * Replaces the piece on a square with a piece of the same color and the given type.
+     *
+     * @param square    The square of the piece to replace.
+     * @param pieceType The type of piece to replace it with.
+     */
+    private void promoteAt(int square, PieceType pieceType) {
+        PieceColor color = getColorAt(square);
+        removePiece(square);
+        putPiece(toPieceCode(pieceType, color), square);
+    }
+
+    /**
+     * Returns the square of the pawn an en passant capture removes, which is beside the capturing pawn.
+     *
+     * @param fromSquare The source square of the capturing pawn.
+     * @param toSquare   The target square of the capturing pawn.
+     *
+     * @return The square of the captured pawn.
+     */
+    private static int enPassantCaptureSquare(final int fromSquare, final int toSquare) {
+        return fromSquare + getColumnAtSquare(toSquare) - getColumnAtSquare(fromSquare);
+    }
+
+    /**
+     * Moves the rook of a castling move.
+     *
+     * @param toSquare The target square of the king.
+     *
+     * @return {@link #UNDO_ROOK_UNMOVED} if the rook had not moved before, otherwise 0.
+     */
+    private long castle(final int toSquare) {
+        int rookFrom = castlingRookFrom(toSquare);
+        int rookTo = castlingRookTo(toSquare);
+        long undo = (unmovedPieces & bit(rookFrom)) != 0 ? UNDO_ROOK_UNMOVED : 0L;
+        int rook = getPieceCodeAt(rookFrom);
+        removePiece(rookFrom);
+        putPiece(rook, rookTo);
+        unmovedPieces &= ~bit(rookFrom);
+        return undo;
+    }
+
+    /**
+     * Moves the rook back after a castling move has been taken back.
+     *
+     * @param kingToSquare The square the king castled to.
+     * @param rookUnmoved  Whether the rook had not moved before castling.
+     */
+    private void uncastle(final int kingToSquare, boolean rookUnmoved) {
+        int rookFrom = castlingRookFrom(kingToSquare);
+        int rookTo = castlingRookTo(kingToSquare);
+        int rook = getPieceCodeAt(rookTo);
+        removePiece(rookTo);
+        putPiece(rook, rookFrom);
+        if (rookUnmoved) unmovedPieces |= bit(rookFrom);
+    }
+
+    private static int castlingRookFrom(int kingToSquare) {
+        return kingToSquare == 6 || kingToSquare == 62 ? kingToSquare + 1 : kingToSquare - 2;
+    }
+
+    private static int castlingRookTo(int kingToSquare) {
+        return kingToSquare == 6 || kingToSquare == 62 ? kingToSquare - 1 : kingToSquare + 1;
+    }
+
+    /**
+     * Derives the castling rights from which kings and rooks are still unmoved on their start squares.
+     *
+     * @return The castling right bits.
+     */
+    private int castlingRightsFromUnmovedPieces() {
+        int rights = ALL_CASTLING_RIGHTS;
+        for (int square = 0; square < SQUARES; square++) {
+            if ((unmovedPieces & bit(square)) == 0) rights &= CASTLING_MASKS[square];
         }
-        board[pieceToPromote.getPos()] = piece;
+        long whiteRooks = getPieces(PieceType.ROOK, PieceColor.WHITE);
+        long blackRooks = getPieces(PieceType.ROOK, PieceColor.BLACK);
+        if ((getPieces(PieceType.KING, PieceColor.WHITE) & bit(60)) == 0) rights &= ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE);
+        if ((getPieces(PieceType.KING, PieceColor.BLACK) & bit(4)) == 0) rights &= ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE);
+        if ((whiteRooks & bit(63)) == 0) rights &= ~WHITE_KING_SIDE;
+        if ((whiteRooks & bit(56)) == 0) rights &= ~WHITE_QUEEN_SIDE;
+        if ((blackRooks & bit(7)) == 0) rights &= ~BLACK_KING_SIDE;
+        if ((blackRooks & bit(0)) == 0) rights &= ~BLACK_QUEEN_SIDE;
+        return rights;
+    }
+
+    /**
+     * Creates the table of castling rights that survive a move from or to each square.
+     *
+     * @return The castling masks, indexed by square.
+     */
+    private static int[] createCastlingMasks() {
+        int[] masks = new int[SQUARES];
+        Arrays.fill(masks, ALL_CASTLING_RIGHTS);
+        masks[0] = ALL_CASTLING_RIGHTS & ~BLACK_QUEEN_SIDE;
+        masks[4] = ALL_CASTLING_RIGHTS & ~(BLACK_KING_SIDE | BLACK_QUEEN_SIDE);
+        masks[7] = ALL_CASTLING_RIGHTS & ~BLACK_KING_SIDE;
+        masks[56] = ALL_CASTLING_RIGHTS & ~WHITE_QUEEN_SIDE;
+        masks[60] = ALL_CASTLING_RIGHTS & ~(WHITE_KING_SIDE | WHITE_QUEEN_SIDE);
+        masks[63] = ALL_CASTLING_RIGHTS & ~WHITE_KING_SIDE;
+        return masks;
+    }
+
+    /**
+     * Places a piece on an empty square.
+     *
+     * @param code   The code of the piece.
+     * @param square The square to place it on.
+     */
+    private void putPiece(int code, int square) {
+        long squareBit = bit(square);
+        pieceBitboards[code] |= squareBit;
+        colorBitboards[colorOfCode(code).ordinal()] |= squareBit;
+        occupied |= squareBit;
+        zobristKey ^= Zobrist.piece(code, square);
+        if (code == WHITE_PAWN || code == BLACK_PAWN) pawnKey ^= Zobrist.piece(code, square);
+        material += Evaluation.material(code);
+        middlegameScore += Evaluation.middlegame(code, square);
+        endgameScore += Evaluation.endgame(code, square);
+        phase += Evaluation.phase(code);
+        updateSlidersThrough(squareBit);
+        pieceAttacks[square] = computeAttacks(code, square);
+        addAttacks(colorOfCode(code).ordinal(), pieceAttacks[square], 1);
     }
 
     /**
-     * Performs en passant capture for a pawn.
+     * Removes the piece on an occupied square.
      *
-     * @param fromSquare The source square of the pawn.
-     * @param toSquare   The target square of the pawn.
+     * @param square The square to clear.
      */
-    private void enPassant(final int fromSquare, final int toSquare) {
-        if (Math.abs(fromSquare - toSquare) == 7) {
-            board[fromSquare + 1] = null;
-        } else {
-            board[fromSquare - 1] = null;
+    private void removePiece(int square) {
+        int code = getPieceCodeAt(square);
+        addAttacks(colorOfCode(code).ordinal(), pieceAttacks[square], -1);
+        pieceAttacks[square] = 0L;
+        long mask = ~bit(square);
+        pieceBitboards[code] &= mask;
+        colorBitboards[colorOfCode(code).ordinal()] &= mask;
+        occupied &= mask;
+        zobristKey ^= Zobrist.piece(code, square);
+        if (code == WHITE_PAWN || code == BLACK_PAWN) pawnKey ^= Zobrist.piece(code, square);
+        material -= Evaluation.material(code);
+        middlegameScore -= Evaluation.middlegame(code, square);
+        endgameScore -= Evaluation.endgame(code, square);
+        phase -= Evaluation.phase(code);
+        updateSlidersThrough(bit(square));
+    }
+
+    /**
+     * Recomputes the attacks of every sliding piece whose rays reach a square whose occupancy has just changed.
+     *
+     * @param changed The changed square as a bitboard.
+     */
+    private void updateSlidersThrough(long changed) {
+        long sliders = 0L;
+        for (PieceColor color : COLORS) {
+            sliders |= getPieces(PieceType.ROOK, color) | getPieces(PieceType.BISHOP, color) |
+                       getPieces(PieceType.QUEEN, color);
         }
+        for (; sliders != 0; sliders &= sliders - 1) {
+            int square = Long.numberOfTrailingZeros(sliders);
+            if ((pieceAttacks[square] & changed) == 0) continue;
+            int code = getPieceCodeAt(square);
+            int colorIndex = colorOfCode(code).ordinal();
+            addAttacks(colorIndex, pieceAttacks[square], -1);
+            pieceAttacks[square] = computeAttacks(code, square);
+            addAttacks(colorIndex, pieceAttacks[square], 1);
+        }
+    }
+
+    private long computeAttacks(int code, int square) {
+        return switch (typeOfCode(code)) {
+            case PAWN -> Attacks.pawn(colorOfCode(code), square);
+            case KNIGHT -> Attacks.knight(square);
+            case BISHOP -> Attacks.bishop(square, occupied);
+            case ROOK -> Attacks.rook(square, occupied);
+            case QUEEN -> Attacks.queen(square, occupied);
+            case KING -> Attacks.king(square);
+        };
     }
 
     /**
-     * Performs castling move for a king and rook.
+     * Adds to or subtracts from the attack counts of one color.
      *
-     * @param fromSquare The source square of the king.
-     * @param toSquare   The target square of the king.
+     * @param colorIndex The ordinal of the attacking color.
+     * @param attacks    The attacked squares.
+     * @param delta      1 to add the attacks, -1 to remove them.
      */
-    private void castle(final int fromSquare, final int toSquare) {
-        if (toSquare == 6 || toSquare == 62) {
-            Piece rook = getPieceAt(toSquare + 1);
-            rook.setMoveStatus();
-            rook.setPos(toSquare - 1);
-            board[toSquare + 1] = null;
-            board[toSquare - 1] = rook;
-        } else {
-            Piece rook = getPieceAt(toSquare - 2);
-            rook.setMoveStatus();
-            rook.setPos(toSquare + 1);
-            board[toSquare - 2] = null;
-            board[toSquare + 1] = rook;
+    private void addAttacks(int colorIndex, long attacks, int delta) {
+        int offset = colorIndex * SQUARES;
+        for (; attacks != 0; attacks &= attacks - 1) {
+            int square = Long.numberOfTrailingZeros(attacks);
+            int count = attackCounts[offset + square] += delta;
+            if (count == 0) attackedSquares[colorIndex] &= ~bit(square);
+            else attackedSquares[colorIndex] |= bit(square);
         }
     }
 
@@ -210,13 +1004,7 @@ public class Board
      * Resets the board to the start position.
      */
     public void resetToStartPosition() {
-        List<Piece> pieces = FENConverter.loadBoardFromFEN(START_FEN);
-        Piece[] newBoard = new Piece[ROWS * COLUMNS];
-        for (Piece piece : pieces) {
-            newBoard[piece.getPos()] = piece;
-        }
-        this.board = newBoard;
-        whiteToMove = true;
+        FENConverter.loadPositionFromFEN(this, START_FEN);
     }
     /**
      * Returns the row index of the given square.
@@ -246,6 +1034,16 @@ public class Board
         return whiteToMove;
     }
 
+    /**
+     * Sets which player is to move.
+     *
+     * @param whiteToMove True if it is white's turn, false if it is black's turn.
+     */
+    public void setWhiteToMove(final boolean whiteToMove) {
+        if (this.whiteToMove != whiteToMove) zobristKey ^= Zobrist.blackToMove();
+        this.whiteToMove = whiteToMove;
+    }
+
     /**
      * Finds all possible moves for the given color on the board.
      *
@@ -254,17 +1052,30 @@ public class Board
      */
     public List<Integer> findAllPossibleMoves(PieceColor color){
         boolean savedState = isWhiteToMove();
-        if(color == PieceColor.WHITE) whiteToMove = true;
-        else whiteToMove = false;
+        whiteToMove = color == PieceColor.WHITE;
         List<Integer> allPossibleMoves = new ArrayList<>();
-        for (int i = 0; i < board.length; i++){
-            if (getPieceAt(i) == null) continue;
-            allPossibleMoves.addAll(getPieceAt(i).getPossibleMoves(this));
+        for (long bits = colorBitboards[color.ordinal()]; bits != 0; bits &= bits - 1) {
+            allPossibleMoves.addAll(getPieceAt(Long.numberOfTrailingZeros(bits)).getPossibleMoves(this));
         }
         whiteToMove = savedState;
         return allPossibleMoves;
     }
 
+    /**
+     * Adds all possible moves for the given color to a list, without allocating.
+     *
+     * @param color The color of the pieces.
+     * @param moves The list to add the encoded moves to.
+     */
+    public void findAllPossibleMoves(PieceColor color, MoveList moves) {
+        boolean savedState = isWhiteToMove();
+        whiteToMove = color == PieceColor.WHITE;
+        for (long bits = colorBitboards[color.ordinal()]; bits != 0; bits &= bits - 1) {
+            getPieceAt(Long.numberOfTrailingZeros(bits)).getPossibleMoves(this, moves);
+        }
+        whiteToMove = savedState;
+    }
+
     /**
      * Returns the position of the king of the specified color.
      *
@@ -272,12 +1083,9 @@ public class Board
      * @return The position of the king.
      */
     public int getKingPos(PieceColor color){
-        for (int square = 0; square < board.length; square++){
-            Piece piece = getPieceAt(square);
-            if (piece == null) continue;
-            else if (piece instanceof King && piece.getColor() == color) return square;
-        }
-        return 0;
+        long king = pieceBitboards[toPieceCode(PieceType.KING, color)];
+        if (king == 0) return 0;
+        return Long.numberOfTrailingZeros(king);
     }
 
     /**
@@ -286,18 +1094,86 @@ public class Board
      * @return True if it is checkmate, false otherwise.
      */
     public boolean isMate(){
-        PieceColor colorToMove;
-        if (whiteToMove) colorToMove = PieceColor.WHITE;
-        else colorToMove = PieceColor.BLACK;
-
-        for (int i = 0; i < board.length; i++) {
-            Piece current = getPieceAt(i);
-            if (current == null) continue;
-            // If we find a move for any piece, it is not mate
-            if (current.getColor() == colorToMove && !current.findAllMoves(this).isEmpty()) return false;
+        return getGameStatus() == GameStatus.CHECKMATE;
+    }
+
+    /**
+     * Returns whether the game has ended in the current position, and how. Checkmate and stalemate are found by
+     * stopping at the first legal move, and the draw rules only read what the board already keeps up to date: the
+     * halfmove clock, the keys of earlier positions and the piece bitboards.
+     *
+     * @return The status of the game.
+     */
+    public GameStatus getGameStatus() {
+        if (!new MoveGenerator(this).hasLegalMove()) {
+            return isInCheck(whiteToMove ? PieceColor.WHITE : PieceColor.BLACK) ? GameStatus.CHECKMATE : GameStatus.STALEMATE;
         }
-        // No moves found, could be mate or stalemate
-        return true;
+        if (halfmoveClock >= FIFTY_MOVE_PLIES) return GameStatus.FIFTY_MOVE_RULE;
+        if (isRepetition(REPETITIONS_FOR_DRAW)) return GameStatus.THREEFOLD_REPETITION;
+        if (isInsufficientMaterial()) return GameStatus.INSUFFICIENT_MATERIAL;
+        return GameStatus.ONGOING;
     }
-}
 
+    /**
+     * Checks if the current position has occurred at least the given number of times, counting this time. Only
+     * positions since the last capture or pawn move, with the same side to move, can be the same, so only those keys
+     * are compared. The keys include a usable en passant square, so a position where an en passant capture is possible
+     * differs from the same placement without it. Positions from before the board was set up are not known.
+     *
+     * @param count The number of occurrences.
+     *
+     * @return True if the position has occurred that many times.
+     */
+    public boolean isRepetition(int count) {
+        long key = getZobristKey();
+        int occurrences = 1;
+        int oldest = Math.max(0, undoCount - halfmoveClock);
+        for (int i = undoCount - 2; i >= oldest && occurrences < count; i -= 2) {
+            if (positionKeyHistory[i] == key) occurrences++;
+        }
+        return occurrences >= count;
+    }
+
+    /**
+     * Checks if neither side has the material to ever mate: only kings, a king and one minor piece against a bare king,
+     * or only bishops besides the kings, all on squares of the same color.
+     *
+     * @return True if no sequence of legal moves can end in mate.
+     */
+    public boolean isInsufficientMaterial() {
+        long heavyPieces = 0L;
+        for (PieceColor color : COLORS) {
+            heavyPieces |= getPieces(PieceType.PAWN, color) | getPieces(PieceType.ROOK, color) |
+                           getPieces(PieceType.QUEEN, color);
+        }
+        if (heavyPieces != 0) return false;
+        long knights = getPieces(PieceType.KNIGHT, PieceColor.WHITE) | getPieces(PieceType.KNIGHT, PieceColor.BLACK);
+        long bishops = getPieces(PieceType.BISHOP, PieceColor.WHITE) | getPieces(PieceType.BISHOP, PieceColor.BLACK);
+        if (Long.bitCount(knights | bishops) <= 1) return true;
+        return knights == 0 && ((bishops & LIGHT_SQUARES) == 0 || (bishops & ~LIGHT_SQUARES) == 0);
+    }
+
+    /**
+     * Creates a piece object of the given type and color.
+     *
+     * @param type   The type of the piece.
+     * @param color  The color of the piece.
+     * @param square The square the piece stands on.
+     *
+     * @return The new piece.
+     */
+    private static Piece createPiece(PieceType type, PieceColor color, int square) {
+        return switch (type) {
+            case ROOK -> new Rook(square, color);
+            case KNIGHT -> new Knight(square, color);
+            case BISHOP -> new Bishop(square, color);
+            case QUEEN -> new Queen(square, color);
+            case KING -> new King(square, color);
+            case PAWN -> new Pawn(square, color);
+        };
+    }
+
+    private static long bit(int square) {
+        return 1L << square;
+    }
+}
@@ -0,0 +1,242 @@
+package se.liu.marfr380;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Analyzes every position of an EPD or FEN file to a fixed depth, node count or time, and writes one EPD record per
+ * position with the analysis as the standard operations {@code pm} (predicted move, in SAN), {@code ce} (score in
+ * centipawns), {@code acd} (depth), {@code acn} (nodes) and {@code acs} (seconds). The operations of the input record
+ * are kept. If a record has a {@code bm} or {@code am} operation, the position counts as solved when the predicted
+ * move is one of the best moves and none of the moves to avoid.
+ * <p>
+ * One thread reads the file and hands each position to a fixed pool of workers, each with its own {@link Search} and
+ * transposition table. The reader blocks when too many positions are waiting, so memory use stays flat however large
+ * the file is. The results are written as they complete, but in the order of the input, so that two runs can be
+ * compared line by line.
+ * <p>
+ * Usage: {@code EPDRunner [--depth <n>] [--nodes <n>] [--time <millis>] [--threads <n>] [--hash <megabytes>]
+ * [--output <file>] <file.epd>}. Without an output file the results go to standard output.
+ */
+public class EPDRunner
+{
+    private final static int DEFAULT_DEPTH = 6;
+    private final static int DEFAULT_HASH_SIZE = 16;
+    private final static int POSITIONS_IN_FLIGHT_PER_THREAD = 16;
+    private final static int MAX_REPORTED_ERRORS = 10;
+    private final static double MILLIS_PER_HOUR = 3.6e6;
+
+    private final SearchLimits limits;
+    private final ThreadLocal<Search> searches;
+    private final ThreadLocal<Board> boards = ThreadLocal.withInitial(Board::new);
+    private final LongAdder positions = new LongAdder();
+    private final LongAdder solved = new LongAdder();
+    private final LongAdder withSolution = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+
+    private final Map<Long, String> pendingResults = new HashMap<>();
+    private long nextToWrite = 0;
+
+    /**
+     * Creates a runner that analyzes positions with the given limits.
+     *
+     * @param limits   When to stop analyzing a position.
+     * @param hashSize The size of the transposition table of every worker, in megabytes.
+     */
+    public EPDRunner(SearchLimits limits, int hashSize) {
+        this.limits = limits;
+        this.searches = ThreadLocal.withInitial(() -> new Search(new TranspositionTable(hashSize)));
+    }
+
+    /**
+     * Analyzes one EPD or FEN record on the calling thread.
+     *
+     * @param record The record.
+     * @param board  The board to set the position up on.
+     * @param search The search to analyze with.
+     *
+     * @return The record with the analysis operations added.
+     *
+     * @throws IllegalArgumentException If the record is malformed.
+     */
+    public String analyze(String record, Board board, Search search) {
+        int operationsStart = FENConverter.loadPosition(board, record, 0);
+        String operations = record.substring(operationsStart).trim();
+        String position = record.substring(0, operationsStart).trim();
+        SearchResult result = search.search(board, limits);
+        int move = result.getBestMove();
+        nodes.add(result.getNodes());
+
+        StringBuilder builder = new StringBuilder(position.length() + operations.length() + 64);
+        builder.append(position);
+        if (!operations.isEmpty()) {
+            builder.append(' ').append(operations);
+            if (!operations.endsWith(";")) builder.append(';');
+            checkSolution(board, operations, move);
+        }
+        builder.append(" pm ").append(move == Move.NONE ? "-" : SANConverter.toSAN(board, move));
+        builder.append("; ce ").append(result.getScore());
+        builder.append("; acd ").append(result.getDepth());
+        builder.append("; acn ").append(result.getNodes());
+        builder.append(String.format("; acs %.3f;", result.getTimeMillis() / 1000.0));
+        return builder.toString();
+    }
+
+    /**
+     * Analyzes all records read from a reader and writes the results in input order.
+     *
+     * @param reader  Where to read the records from, one per line. Empty lines and lines starting with {@code #} are
+     *                skipped.
+     * @param output  Where to write the results, one per line.
+     * @param threads The number of workers.
+     *
+     * @throws IOException          If reading or writing fails.
+     * @throws InterruptedException If the thread is interrupted while waiting for the workers.
+     */
+    public void run(BufferedReader reader, Writer output, int threads) throws IOException, InterruptedException {
+        Semaphore inFlight = new Semaphore(threads * POSITIONS_IN_FLIGHT_PER_THREAD);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        long index = 0;
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String record = line.trim();
+                if (record.isEmpty() || record.startsWith("#")) continue;
+                long number = index++;
+                inFlight.acquire();
+                workers.execute(() -> {
+                    String result;
+                    try {
+                        result = analyze(record, boards.get(), searches.get());
+                        positions.increment();
+                    } catch (RuntimeException e) {
+                        // Any failure still fills the slot of the record, or no later result would ever be written.
+                        String message = e instanceof IllegalArgumentException && e.getMessage() != null
+                                         ? e.getMessage() : e.toString();
+                        failures.increment();
+                        if (failures.sum() <= MAX_REPORTED_ERRORS) {
+                            System.err.println("Position " + (number + 1) + ": " + message);
+                        }
+                        result = record + " c9 \"" + message.replace('"', '\'') + "\";";
+                    }
+                    write(number, result, output, inFlight);
+                });
+            }
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            output.flush();
+        }
+    }
+
+    /**
+     * Writes a result once all results before it have been written. A result that completes early waits in memory, but
+     * keeps its permit until it is written, so the waiting results are bounded by the positions in flight.
+     */
+    private void write(long number, String result, Writer output, Semaphore inFlight) {
+        synchronized (pendingResults) {
+            pendingResults.put(number, result);
+            for (String next = pendingResults.remove(nextToWrite); next != null; next = pendingResults.remove(nextToWrite)) {
+                try {
+                    output.write(next);
+                    output.write('\n');
+                } catch (IOException e) {
+                    System.err.println("Could not write result " + (nextToWrite + 1) + ": " + e.getMessage());
+                }
+                nextToWrite++;
+                inFlight.release();
+            }
+        }
+    }
+
+    /**
+     * Counts the position as solved if the move is one of its {@code bm} moves and none of its {@code am} moves.
+     */
+    private void checkSolution(Board board, String operations, int move) {
+        boolean hasBestMoves = false;
+        boolean hasAvoidMoves = false;
+        boolean isBest = false;
+        boolean isAvoided = false;
+        for (String operation : operations.split(";")) {
+            String[] tokens = operation.trim().split("\\s+");
+            boolean best = tokens[0].equals("bm");
+            if (!best && !tokens[0].equals("am")) continue;
+            if (best) hasBestMoves = true;
+            else hasAvoidMoves = true;
+            for (int i = 1; i < tokens.length; i++) {
+                int expected;
+                try {
+                    expected = SANConverter.parseMove(board, tokens[i]);
+                } catch (IllegalArgumentException e) {
+                    continue;
+                }
+                if (expected != move) continue;
+                if (best) isBest = true;
+                else isAvoided = true;
+            }
+        }
+        if (!hasBestMoves && !hasAvoidMoves) return;
+        withSolution.increment();
+        if ((isBest || !hasBestMoves) && !isAvoided) solved.increment();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int depth = Search.MAX_DEPTH;
+        long maxNodes = SearchLimits.UNLIMITED;
+        long time = SearchLimits.UNLIMITED;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int hashSize = DEFAULT_HASH_SIZE;
+        Path outputPath = null;
+        Path inputPath = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--depth" -> depth = Integer.parseInt(args[++i]);
+                case "--nodes" -> maxNodes = Long.parseLong(args[++i]);
+                case "--time" -> time = Long.parseLong(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--hash" -> hashSize = Integer.parseInt(args[++i]);
+                case "--output" -> outputPath = Path.of(args[++i]);
+                default -> inputPath = Path.of(args[i]);
+            }
+        }
+        if (inputPath == null) {
+            System.err.println("Usage: EPDRunner [--depth <n>] [--nodes <n>] [--time <millis>] [--threads <n>] " +
+                               "[--hash <megabytes>] [--output <file>] <file.epd>");
+            System.exit(1);
+        }
+        if (depth == Search.MAX_DEPTH && maxNodes == SearchLimits.UNLIMITED && time == SearchLimits.UNLIMITED) {
+            depth = DEFAULT_DEPTH;
+        }
+
+        EPDRunner runner = new EPDRunner(new SearchLimits(depth, time, maxNodes), hashSize);
+        long start = System.nanoTime();
+        try (BufferedReader reader = Files.newBufferedReader(inputPath, StandardCharsets.UTF_8);
+             Writer output = outputPath == null ? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+                                                : Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8)) {
+            runner.run(reader, output, threads);
+        }
+        double millis = (System.nanoTime() - start) / 1.0e6;
+
+        long analyzed = runner.positions.sum();
+        System.err.printf("Positions: %d analyzed, %d failed%n", analyzed, runner.failures.sum());
+        if (runner.withSolution.sum() > 0) {
+            System.err.printf("Solved: %d of %d%n", runner.solved.sum(), runner.withSolution.sum());
+        }
+        System.err.printf("Nodes: %d%n", runner.nodes.sum());
+        System.err.printf("Time: %.3f s with %d threads%n", millis / 1000, threads);
+        System.err.printf("Positions per hour: %.0f%n", analyzed * MILLIS_PER_HOUR / Math.max(millis, 1.0e-6));
+        System.err.printf("Nodes per second: %.0f%n", runner.nodes.sum() * 1000 / Math.max(millis, 1.0e-6));
+    }
+}
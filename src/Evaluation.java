@@ -0,0 +1,509 @@
+package se.liu.marfr380;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The static evaluation of a position: material, piece-square scores and pawn structure, tapered between middlegame and
+ * endgame values by the game phase.
+ * <p>
+ * Every term is a sum over the pieces on the board, so {@link Board} keeps the sums up to date as pieces are put and
+ * removed, the same way it keeps its Zobrist key, and {@link #evaluate(Board)} only combines four numbers. The phase is
+ * 24 with all minor and major pieces on the board and falls towards 0 as they are traded: a knight or bishop counts 1,
+ * a rook 2 and a queen 4. {@link #evaluateFromScratch(Board)} computes the same score by reading every square, and is
+ * kept as the reference the incremental sums are checked against.
+ * <p>
+ * The pawn structure terms penalize doubled, isolated and backward pawns, reward passed pawns by how far they have
+ * come, and reward the pawns in front of a king on its first two rows. They only depend on the pawns, so with a
+ * {@link PawnHashTable} they are computed once per pawn structure. A structure score packs the middlegame score in the
+ * upper 32 bits and the endgame score in the lower, both from white's point of view. The king shield scores are
+ * computed for every file the king could stand on, four bits per file, white's in the lower 32 bits and black's in the
+ * upper.
+ * <p>
+ * Usage: {@code Evaluation [--games <n>] [--plies <n>] [--seed <n>]} plays random games, checks that both evaluations
+ * agree in every position reached, then replays the games to time both against replaying them without evaluating.
+ */
+public final class Evaluation
+{
+    /**
+     * The phase with all minor and major pieces on the board.
+     */
+    public final static int MAX_PHASE = 24;
+
+    private final static int SQUARES = 64;
+    private final static int PIECE_CODES = 13;
+    private final static int FLIP_VERTICAL = 56;
+    private final static int DEFAULT_GAMES = 200;
+    private final static int DEFAULT_PLIES = 200;
+    private final static int TIMED_ROUNDS = 20;
+
+    private final static int COLUMNS = 8;
+    private final static int SHIELD_BITS = 4;
+    private final static int DOUBLED_MIDDLEGAME = -10, DOUBLED_ENDGAME = -20;
+    private final static int ISOLATED_MIDDLEGAME = -10, ISOLATED_ENDGAME = -15;
+    private final static int BACKWARD_MIDDLEGAME = -8, BACKWARD_ENDGAME = -10;
+    private final static int SHIELD_BONUS = 8;
+    private final static int[] PASSED_MIDDLEGAME = { 0, 5, 10, 15, 25, 40, 60, 0 };
+    private final static int[] PASSED_ENDGAME = { 0, 10, 20, 35, 60, 100, 150, 0 };
+
+    private final static int[] PIECE_VALUES = { 500, 320, 330, 900, 0, 100 };
+    private final static int[] PHASE_WEIGHTS = { 2, 1, 1, 4, 0, 0 };
+
+    // Piece-square tables from white's point of view, starting with a8 like the squares of the board.
+    private final static int[] PAWN_TABLE = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             50,  50,  50,  50,  50,  50,  50,  50,
+             10,  10,  20,  30,  30,  20,  10,  10,
+              5,   5,  10,  25,  25,  10,   5,   5,
+              0,   0,   0,  20,  20,   0,   0,   0,
+              5,  -5, -10,   0,   0, -10,  -5,   5,
+              5,  10,  10, -20, -20,  10,  10,   5,
+              0,   0,   0,   0,   0,   0,   0,   0 };
+    private final static int[] PAWN_ENDGAME_TABLE = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+             80,  80,  80,  80,  80,  80,  80,  80,
+             50,  50,  50,  50,  50,  50,  50,  50,
+             30,  30,  30,  30,  30,  30,  30,  30,
+             15,  15,  15,  15,  15,  15,  15,  15,
+              5,   5,   5,   5,   5,   5,   5,   5,
+              0,   0,   0,   0,   0,   0,   0,   0,
+              0,   0,   0,   0,   0,   0,   0,   0 };
+    private final static int[] KNIGHT_TABLE = {
+            -50, -40, -30, -30, -30, -30, -40, -50,
+            -40, -20,   0,   0,   0,   0, -20, -40,
+            -30,   0,  10,  15,  15,  10,   0, -30,
+            -30,   5,  15,  20,  20,  15,   5, -30,
+            -30,   0,  15,  20,  20,  15,   0, -30,
+            -30,   5,  10,  15,  15,  10,   5, -30,
+            -40, -20,   0,   5,   5,   0, -20, -40,
+            -50, -40, -30, -30, -30, -30, -40, -50 };
+    private final static int[] BISHOP_TABLE = {
+            -20, -10, -10, -10, -10, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,  10,  10,   5,   0, -10,
+            -10,   5,   5,  10,  10,   5,   5, -10,
+            -10,   0,  10,  10,  10,  10,   0, -10,
+            -10,  10,  10,  10,  10,  10,  10, -10,
+            -10,   5,   0,   0,   0,   0,   5, -10,
+            -20, -10, -10, -10, -10, -10, -10, -20 };
+    private final static int[] ROOK_TABLE = {
+              0,   0,   0,   0,   0,   0,   0,   0,
+              5,  10,  10,  10,  10,  10,  10,   5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+             -5,   0,   0,   0,   0,   0,   0,  -5,
+              0,   0,   0,   5,   5,   0,   0,   0 };
+    private final static int[] QUEEN_TABLE = {
+            -20, -10, -10,  -5,  -5, -10, -10, -20,
+            -10,   0,   0,   0,   0,   0,   0, -10,
+            -10,   0,   5,   5,   5,   5,   0, -10,
+             -5,   0,   5,   5,   5,   5,   0,  -5,
+              0,   0,   5,   5,   5,   5,   0,  -5,
+            -10,   5,   5,   5,   5,   5,   0, -10,
+            -10,   0,   5,   0,   0,   0,   0, -10,
+            -20, -10, -10,  -5,  -5, -10, -10, -20 };
+    private final static int[] KING_TABLE = {
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -30, -40, -40, -50, -50, -40, -40, -30,
+            -20, -30, -30, -40, -40, -30, -30, -20,
+            -10, -20, -20, -20, -20, -20, -20, -10,
+             20,  20,   0,   0,   0,   0,  20,  20,
+             20,  30,  10,   0,   0,  10,  30,  20 };
+    private final static int[] KING_ENDGAME_TABLE = {
+            -50, -40, -30, -20, -20, -30, -40, -50,
+            -30, -20, -10,   0,   0, -10, -20, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  30,  40,  40,  30, -10, -30,
+            -30, -10,  20,  30,  30,  20, -10, -30,
+            -30, -30,   0,   0,   0,   0, -30, -30,
+            -50, -30, -30, -30, -30, -30, -30, -50 };
+
+    private final static int[] MATERIAL = new int[PIECE_CODES];
+    private final static int[] PHASE = new int[PIECE_CODES];
+    private final static int[] MIDDLEGAME = new int[PIECE_CODES * SQUARES];
+    private final static int[] ENDGAME = new int[PIECE_CODES * SQUARES];
+    private final static long[] FILES = new long[COLUMNS];
+    private final static long[] ADJACENT_FILES = new long[COLUMNS];
+    private final static long[][] PASSED_MASKS = new long[2][SQUARES];
+    private final static long[][] SUPPORT_MASKS = new long[2][SQUARES];
+
+    static {
+        for (int square = 0; square < SQUARES; square++) {
+            FILES[square % COLUMNS] |= 1L << square;
+        }
+        for (int file = 0; file < COLUMNS; file++) {
+            if (file > 0) ADJACENT_FILES[file] |= FILES[file - 1];
+            if (file < COLUMNS - 1) ADJACENT_FILES[file] |= FILES[file + 1];
+        }
+        for (int square = 0; square < SQUARES; square++) {
+            int row = square / COLUMNS;
+            long span = FILES[square % COLUMNS] | ADJACENT_FILES[square % COLUMNS];
+            for (int other = 0; other < SQUARES; other++) {
+                int otherRow = other / COLUMNS;
+                long bit = 1L << other;
+                if ((span & bit) == 0) continue;
+                if (otherRow < row) PASSED_MASKS[PieceColor.WHITE.ordinal()][square] |= bit;
+                if (otherRow > row) PASSED_MASKS[PieceColor.BLACK.ordinal()][square] |= bit;
+                if ((ADJACENT_FILES[square % COLUMNS] & bit) == 0) continue;
+                if (otherRow >= row) SUPPORT_MASKS[PieceColor.WHITE.ordinal()][square] |= bit;
+                if (otherRow <= row) SUPPORT_MASKS[PieceColor.BLACK.ordinal()][square] |= bit;
+            }
+        }
+
+        for (PieceColor color : PieceColor.values()) {
+            int sign = color == PieceColor.WHITE ? 1 : -1;
+            for (PieceType type : PieceType.values()) {
+                int code = Board.toPieceCode(type, color);
+                MATERIAL[code] = sign * PIECE_VALUES[type.ordinal()];
+                PHASE[code] = PHASE_WEIGHTS[type.ordinal()];
+                for (int square = 0; square < SQUARES; square++) {
+                    int tableSquare = color == PieceColor.WHITE ? square : square ^ FLIP_VERTICAL;
+                    MIDDLEGAME[code * SQUARES + square] = sign * middlegameTable(type)[tableSquare];
+                    ENDGAME[code * SQUARES + square] = sign * endgameTable(type)[tableSquare];
+                }
+            }
+        }
+    }
+
+    private Evaluation() {}
+
+    /**
+     * Returns the material a piece adds to the score, positive for white and negative for black.
+     *
+     * @param code The piece code, see {@link Board#toPieceCode}.
+     *
+     * @return The material in centipawns.
+     */
+    public static int material(int code) {
+        return MATERIAL[code];
+    }
+
+    /**
+     * Returns the material value of a piece type, the same for both colors.
+     *
+     * @param type The piece type.
+     *
+     * @return The value in centipawns, 0 for the king.
+     */
+    public static int pieceValue(PieceType type) {
+        return PIECE_VALUES[type.ordinal()];
+    }
+
+    /**
+     * Returns how much a piece adds to the game phase.
+     *
+     * @param code The piece code.
+     *
+     * @return The phase weight.
+     */
+    public static int phase(int code) {
+        return PHASE[code];
+    }
+
+    /**
+     * Returns the middlegame piece-square score of a piece on a square, positive for white and negative for black.
+     *
+     * @param code   The piece code.
+     * @param square The square.
+     *
+     * @return The score in centipawns.
+     */
+    public static int middlegame(int code, int square) {
+        return MIDDLEGAME[code * SQUARES + square];
+    }
+
+    /**
+     * Returns the endgame piece-square score of a piece on a square, positive for white and negative for black.
+     *
+     * @param code   The piece code.
+     * @param square The square.
+     *
+     * @return The score in centipawns.
+     */
+    public static int endgame(int code, int square) {
+        return ENDGAME[code * SQUARES + square];
+    }
+
+    /**
+     * Evaluates a position from the sums the board keeps up to date, looking up the pawn structure in a table and only
+     * computing it when it is not there.
+     *
+     * @param board The position.
+     * @param pawns The pawn table of the calling thread.
+     *
+     * @return The score in centipawns from the side to move's point of view.
+     */
+    public static int evaluate(Board board, PawnHashTable pawns) {
+        long pawnKey = board.getPawnKey();
+        int entry = pawns.probe(pawnKey);
+        if (entry < 0) entry = pawns.store(pawnKey, evaluatePawnStructure(board), evaluatePawnShields(board));
+        return combine(board, board.getMaterial(), board.getMiddlegameScore(), board.getEndgameScore(), board.getPhase(),
+                       pawns.getStructure(entry), pawns.getShields(entry));
+    }
+
+    /**
+     * Evaluates a position from the sums the board keeps up to date, computing the pawn structure every time.
+     *
+     * @param board The position.
+     *
+     * @return The score in centipawns from the side to move's point of view.
+     */
+    public static int evaluate(Board board) {
+        return combine(board, board.getMaterial(), board.getMiddlegameScore(), board.getEndgameScore(), board.getPhase(),
+                       evaluatePawnStructure(board), evaluatePawnShields(board));
+    }
+
+    /**
+     * Evaluates a position by reading every square of the board. It gives the same score as {@link #evaluate(Board)}
+     * and is only meant to check it.
+     *
+     * @param board The position.
+     *
+     * @return The score in centipawns from the side to move's point of view.
+     */
+    public static int evaluateFromScratch(Board board) {
+        int material = 0;
+        int middlegame = 0;
+        int endgame = 0;
+        int phase = 0;
+        for (int square = 0; square < SQUARES; square++) {
+            int code = board.getPieceCodeAt(square);
+            if (code == Board.EMPTY) continue;
+            material += MATERIAL[code];
+            middlegame += MIDDLEGAME[code * SQUARES + square];
+            endgame += ENDGAME[code * SQUARES + square];
+            phase += PHASE[code];
+        }
+        return combine(board, material, middlegame, endgame, phase, evaluatePawnStructure(board),
+                       evaluatePawnShields(board));
+    }
+
+    /**
+     * Returns the doubled, isolated, backward and passed pawn terms of a position.
+     *
+     * @param board The position.
+     *
+     * @return The packed middlegame and endgame scores from white's point of view.
+     */
+    static long evaluatePawnStructure(Board board) {
+        int middlegame = 0;
+        int endgame = 0;
+        for (PieceColor color : PieceColor.values()) {
+            PieceColor opponent = color == PieceColor.WHITE ? PieceColor.BLACK : PieceColor.WHITE;
+            long own = board.getPieces(PieceType.PAWN, color);
+            long enemy = board.getPieces(PieceType.PAWN, opponent);
+            int sign = color == PieceColor.WHITE ? 1 : -1;
+            int forward = color == PieceColor.WHITE ? -COLUMNS : COLUMNS;
+            for (int file = 0; file < COLUMNS; file++) {
+                int extra = Long.bitCount(own & FILES[file]) - 1;
+                if (extra > 0) {
+                    middlegame += sign * extra * DOUBLED_MIDDLEGAME;
+                    endgame += sign * extra * DOUBLED_ENDGAME;
+                }
+            }
+            for (long pawns = own; pawns != 0; pawns &= pawns - 1) {
+                int square = Long.numberOfTrailingZeros(pawns);
+                int file = square % COLUMNS;
+                long passedMask = PASSED_MASKS[color.ordinal()][square];
+                if ((own & ADJACENT_FILES[file]) == 0) {
+                    middlegame += sign * ISOLATED_MIDDLEGAME;
+                    endgame += sign * ISOLATED_ENDGAME;
+                } else if ((own & SUPPORT_MASKS[color.ordinal()][square]) == 0 &&
+                           (Attacks.pawn(color, square + forward) & enemy) != 0) {
+                    middlegame += sign * BACKWARD_MIDDLEGAME;
+                    endgame += sign * BACKWARD_ENDGAME;
+                }
+                if ((enemy & passedMask) == 0 && (own & passedMask & FILES[file]) == 0) {
+                    int rank = color == PieceColor.WHITE ? COLUMNS - 1 - square / COLUMNS : square / COLUMNS;
+                    middlegame += sign * PASSED_MIDDLEGAME[rank];
+                    endgame += sign * PASSED_ENDGAME[rank];
+                }
+            }
+        }
+        return pack(middlegame, endgame);
+    }
+
+    /**
+     * Returns the king shield of every file for both colors: for each of the three files around the king's file, 2 if a
+     * pawn of the king's color stands on its second rank and otherwise 1 if one stands on its third.
+     *
+     * @param board The position.
+     *
+     * @return The packed shield scores.
+     */
+    static long evaluatePawnShields(Board board) {
+        long shields = 0L;
+        for (PieceColor color : PieceColor.values()) {
+            long own = board.getPieces(PieceType.PAWN, color);
+            int secondRow = color == PieceColor.WHITE ? 6 : 1;
+            int thirdRow = color == PieceColor.WHITE ? 5 : 2;
+            for (int file = 0; file < COLUMNS; file++) {
+                int shield = 0;
+                for (int shieldFile = Math.max(0, file - 1); shieldFile <= Math.min(COLUMNS - 1, file + 1); shieldFile++) {
+                    if ((own & 1L << secondRow * COLUMNS + shieldFile) != 0) shield += 2;
+                    else if ((own & 1L << thirdRow * COLUMNS + shieldFile) != 0) shield += 1;
+                }
+                shields |= (long) shield << (color.ordinal() * Integer.SIZE + file * SHIELD_BITS);
+            }
+        }
+        return shields;
+    }
+
+    /**
+     * Adds the pawn terms to the piece sums and tapers the result, from the side to move's point of view.
+     */
+    private static int combine(Board board, int material, int middlegame, int endgame, int phase, long structure,
+                               long shields)
+    {
+        middlegame += (int) (structure >> Integer.SIZE) + kingShield(board, PieceColor.WHITE, shields) -
+                      kingShield(board, PieceColor.BLACK, shields);
+        endgame += (int) structure;
+        int score = taper(material, middlegame, endgame, phase);
+        return board.isWhiteToMove() ? score : -score;
+    }
+
+    /**
+     * Returns the shield bonus of a king on its first two rows, and 0 for a king that has left them.
+     */
+    private static int kingShield(Board board, PieceColor color, long shields) {
+        long king = board.getPieces(PieceType.KING, color);
+        if (king == 0) return 0;
+        int square = Long.numberOfTrailingZeros(king);
+        int row = square / COLUMNS;
+        boolean home = color == PieceColor.WHITE ? row >= 6 : row <= 1;
+        if (!home) return 0;
+        int shift = color.ordinal() * Integer.SIZE + square % COLUMNS * SHIELD_BITS;
+        return SHIELD_BONUS * (int) (shields >>> shift & (1 << SHIELD_BITS) - 1);
+    }
+
+    private static long pack(int middlegame, int endgame) {
+        return (long) middlegame << Integer.SIZE | endgame & 0xFFFF_FFFFL;
+    }
+
+    /**
+     * Blends the middlegame and endgame scores by the phase, which is capped at {@link #MAX_PHASE} since promotions can
+     * raise it above.
+     */
+    private static int taper(int material, int middlegame, int endgame, int phase) {
+        int weight = Math.min(phase, MAX_PHASE);
+        return material + (middlegame * weight + endgame * (MAX_PHASE - weight)) / MAX_PHASE;
+    }
+
+    private static int[] middlegameTable(PieceType type) {
+        return switch (type) {
+            case ROOK -> ROOK_TABLE;
+            case KNIGHT -> KNIGHT_TABLE;
+            case BISHOP -> BISHOP_TABLE;
+            case QUEEN -> QUEEN_TABLE;
+            case KING -> KING_TABLE;
+            case PAWN -> PAWN_TABLE;
+        };
+    }
+
+    private static int[] endgameTable(PieceType type) {
+        return switch (type) {
+            case KING -> KING_ENDGAME_TABLE;
+            case PAWN -> PAWN_ENDGAME_TABLE;
+            default -> middlegameTable(type);
+        };
+    }
+
+    public static void main(String[] args) {
+        int games = DEFAULT_GAMES;
+        int plies = DEFAULT_PLIES;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games" -> games = Integer.parseInt(args[++i]);
+                case "--plies" -> plies = Integer.parseInt(args[++i]);
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                default -> throw new IllegalArgumentException("Unknown argument: " + args[i]);
+            }
+        }
+
+        // Record random games, checking both evaluations after every move and every move taken back.
+        Random random = new Random(seed);
+        Board board = new Board();
+        PawnHashTable pawns = new PawnHashTable();
+        MoveList moves = new MoveList();
+        int[][] gameMoves = new int[games][];
+        int positions = 0;
+        for (int game = 0; game < games; game++) {
+            board.resetToStartPosition();
+            int[] played = new int[plies];
+            int length = 0;
+            while (length < plies) {
+                moves.clear();
+                new MoveGenerator(board).generateLegalMoves(moves);
+                if (moves.isEmpty()) break;
+                int move = moves.get(random.nextInt(moves.size()));
+                board.makeMove(move);
+                played[length++] = move;
+                check(board, pawns, game, length);
+                positions++;
+            }
+            for (int i = length; i > 0; i--) {
+                board.unmakeMove();
+                check(board, pawns, game, i - 1);
+            }
+            gameMoves[game] = Arrays.copyOf(played, length);
+        }
+        System.out.printf("Agreement: %d positions in %d games, incremental and full-scan scores match%n", positions, games);
+
+        // Replay the games once without evaluating, so that the time spent making moves can be taken off.
+        long checksum = 0;
+        pawns.clear();
+        long[] nanos = new long[3];
+        for (int round = 0; round < TIMED_ROUNDS; round++) {
+            for (int pass = 0; pass < nanos.length; pass++) {
+                long start = System.nanoTime();
+                for (int[] played : gameMoves) {
+                    board.resetToStartPosition();
+                    for (int move : played) {
+                        board.makeMove(move);
+                        checksum += switch (pass) {
+                            case 0 -> board.getPhase();
+                            case 1 -> evaluate(board, pawns);
+                            default -> evaluateFromScratch(board);
+                        };
+                    }
+                }
+                nanos[pass] += System.nanoTime() - start;
+            }
+        }
+        long evaluations = (long) positions * TIMED_ROUNDS;
+        System.out.printf("Moves only:  %,.0f positions/s%n", evaluations * 1.0e9 / nanos[0]);
+        System.out.printf("Incremental: %,.0f positions/s, %.1f ns per evaluation%n", evaluations * 1.0e9 / nanos[1],
+                          Math.max(0, nanos[1] - nanos[0]) / (double) evaluations);
+        System.out.printf("Full scan:   %,.0f positions/s, %.1f ns per evaluation%n", evaluations * 1.0e9 / nanos[2],
+                          Math.max(0, nanos[2] - nanos[0]) / (double) evaluations);
+        System.out.printf("Pawn table: %d hits, %d misses, %.1f%% hit rate%n", pawns.getHits(), pawns.getMisses(),
+                          pawns.getHitRate() * 100);
+        System.out.printf("Checksum: %d%n", checksum);
+    }
+
+    private static void check(Board board, PawnHashTable pawns, int game, int ply) {
+        long pawnKey = 0L;
+        for (long pawnSquares = board.getPieces(PieceType.PAWN, PieceColor.WHITE) |
+                                board.getPieces(PieceType.PAWN, PieceColor.BLACK); pawnSquares != 0;
+             pawnSquares &= pawnSquares - 1) {
+            int square = Long.numberOfTrailingZeros(pawnSquares);
+            pawnKey ^= Zobrist.piece(board.getPieceCodeAt(square), square);
+        }
+        if (pawnKey != board.getPawnKey()) {
+            throw new IllegalStateException("Game " + game + " ply " + ply + ": wrong pawn key in " + FENConverter.toFEN(board));
+        }
+        int incremental = evaluate(board, pawns);
+        int scratch = evaluateFromScratch(board);
+        if (incremental != scratch) {
+            throw new IllegalStateException("Game " + game + " ply " + ply + ": incremental score " + incremental +
+                                            " but full-scan score " + scratch + " in " +
+                                            FENConverter.toFEN(board));
+        }
+    }
+}
@@ -1,33 +1,256 @@
 package se.liu.marfr380;
 
-import java.util.ArrayList;
-import java.util.List;
-
+/**
+ * Reads and writes positions in Forsyth-Edwards Notation (FEN) and the position part of Extended Position Description
+ * (EPD) records.
+ * <p>
+ * The reader fills an existing {@link Board} in place, one character at a time, without splitting the text or creating
+ * piece objects. It checks the whole record before it changes the board, so a board is never left half set up. The
+ * writer appends to a caller-supplied {@link StringBuilder}, so that many positions can be written with one buffer.
+ */
 public class FENConverter
 {
-    public static List<Piece> loadBoardFromFEN(String fen){
-        List<Piece> pieces = new ArrayList<>();
-        int squareNum = 0;
-	for (int i = 0; i < fen.length(); i++){
-            char current = fen.charAt(i);
-            switch(current){
-                case 'r' -> pieces.add(new Rook(squareNum, PieceColor.BLACK));
-                case 'R' -> pieces.add(new Rook(squareNum, PieceColor.WHITE));
-                case 'n' -> pieces.add(new Knight(squareNum, PieceColor.BLACK));
-                case 'N' -> pieces.add(new Knight(squareNum, PieceColor.WHITE));
-                case 'b' -> pieces.add(new Bishop(squareNum, PieceColor.BLACK));
-                case 'B' -> pieces.add(new Bishop(squareNum, PieceColor.WHITE));
-                case 'q' -> pieces.add(new Queen(squareNum, PieceColor.BLACK));
-                case 'Q' -> pieces.add(new Queen(squareNum, PieceColor.WHITE));
-                case 'k' -> pieces.add(new King(squareNum, PieceColor.BLACK));
-                case 'K' -> pieces.add(new King(squareNum, PieceColor.WHITE));
-                case 'p' -> pieces.add(new Pawn(squareNum, PieceColor.BLACK));
-                case 'P' -> pieces.add(new Pawn(squareNum, PieceColor.WHITE));
-                case '/' -> squareNum--;
-                default -> squareNum += Character.getNumericValue(current)-1;
-            }
-            squareNum++;
-        }
-        return pieces;
+    private final static String PIECE_LETTERS = "RNBQKPrnbqkp";
+    private final static String CASTLING_LETTERS = "KQkq";
+    private final static int[] CASTLING_RIGHTS = {
+            Board.WHITE_KING_SIDE, Board.WHITE_QUEEN_SIDE, Board.BLACK_KING_SIDE, Board.BLACK_QUEEN_SIDE };
+
+    private FENConverter() {}
+
+    /**
+     * Sets up a board from a FEN string. The side to move, castling rights, en passant square and the two move clocks
+     * are read when they are present; missing fields get their start position values.
+     *
+     * @param board The board to set up.
+     * @param fen   The FEN string.
+     *
+     * @throws IllegalArgumentException If the piece placement or one of the fields is malformed, or the position is
+     *                                  impossible, see {@link #loadPosition}.
+     */
+    public static void loadPositionFromFEN(Board board, CharSequence fen) {
+        loadPosition(board, fen, 0);
+    }
+
+    /**
+     * Sets up a board from the position at the start of a FEN or EPD record and returns where the rest of the record
+     * starts. For an EPD record, the rest holds the operations, such as {@code bm} and {@code id}. The move clocks are
+     * only read if they follow the en passant field as numbers, since EPD records leave them out.
+     * <p>
+     * Positions that move generation cannot handle are rejected: each side needs exactly one
+     * king, pawns cannot stand on the first or eighth rank, and an en passant square must be on the sixth rank with
+     * white to move or the third with black to move.
+     *
+     * @param board The board to set up.
+     * @param text  The text holding the record.
+     * @param start The index of the first character of the record.
+     *
+     * @return The index just after the last field read, which is the length of the text if nothing follows.
+     *
+     * @throws IllegalArgumentException If the piece placement or one of the fields is malformed, or the position is
+     *                                  impossible.
+     */
+    public static int loadPosition(Board board, CharSequence text, int start) {
+        // Every field is read and checked before the board is touched, so a malformed record leaves it unchanged.
+        int length = text.length();
+        int placementStart = skipSpaces(text, start);
+        int i = checkPlacement(text, placementStart);
+
+        i = skipSpaces(text, i);
+        boolean whiteToMove = true;
+        if (i < length) {
+            char side = text.charAt(i++);
+            if (side == 'b') whiteToMove = false;
+            else if (side != 'w') throw malformed(text, "side to move");
+        }
+
+        i = skipSpaces(text, i);
+        int rights = 0;
+        if (i < length && text.charAt(i) == '-') {
+            i++;
+        } else {
+            for (; i < length && text.charAt(i) != ' '; i++) {
+                int index = CASTLING_LETTERS.indexOf(text.charAt(i));
+                if (index < 0) throw malformed(text, "castling rights");
+                rights |= CASTLING_RIGHTS[index];
+            }
+        }
+
+        i = skipSpaces(text, i);
+        int enPassantSquare = Board.NO_SQUARE;
+        if (i < length && text.charAt(i) == '-') {
+            i++;
+        } else if (i < length) {
+            if (i + 1 >= length || (i + 2 < length && text.charAt(i + 2) != ' ')) {
+                throw malformed(text, "en passant square");
+            }
+            int column = text.charAt(i) - 'a';
+            int rank = text.charAt(i + 1) - '0';
+            if (column < 0 || column >= Board.getCOLUMNS() || rank < 1 || rank > Board.getROWS()) {
+                throw malformed(text, "en passant square");
+            }
+            // The square a pawn skipped lies on the sixth rank when white is to move and on the third when black is.
+            if (rank != (whiteToMove ? 6 : 3)) {
+                throw invalid(text, "the en passant square is on the wrong rank for the side to move");
+            }
+            enPassantSquare = (Board.getROWS() - rank) * Board.getCOLUMNS() + column;
+            i += 2;
+        }
+
+        int clockStart = skipSpaces(text, i);
+        boolean hasClocks = clockStart < length && isDigit(text.charAt(clockStart));
+        int halfmoveClock = 0;
+        int fullmoveNumber = 0;
+        if (hasClocks) {
+            i = clockStart;
+            for (; i < length && isDigit(text.charAt(i)); i++) {
+                halfmoveClock = halfmoveClock * 10 + text.charAt(i) - '0';
+            }
+            i = skipSpaces(text, i);
+            for (; i < length && isDigit(text.charAt(i)); i++) {
+                fullmoveNumber = fullmoveNumber * 10 + text.charAt(i) - '0';
+            }
+        }
+
+        board.emptyBoard();
+        placePieces(board, text, placementStart);
+        board.setWhiteToMove(whiteToMove);
+        board.setCastlingRights(rights);
+        if (enPassantSquare != Board.NO_SQUARE) board.setEnPassantSquare(enPassantSquare);
+        if (hasClocks) {
+            board.setHalfmoveClock(halfmoveClock);
+            board.setFullmoveNumber(fullmoveNumber);
+        }
+        return i;
+    }
+
+    /**
+     * Returns the position on a board as a FEN string.
+     *
+     * @param board The board.
+     *
+     * @return The FEN string, with all six fields.
+     */
+    public static String toFEN(Board board) {
+        return toFEN(board, new StringBuilder(90)).toString();
+    }
+
+    /**
+     * Appends the position on a board as a FEN string with all six fields.
+     *
+     * @param board   The board.
+     * @param builder The builder to append to.
+     *
+     * @return The builder.
+     */
+    public static StringBuilder toFEN(Board board, StringBuilder builder) {
+        for (int row = 0; row < Board.getROWS(); row++) {
+            if (row > 0) builder.append('/');
+            int emptySquares = 0;
+            for (int column = 0; column < Board.getCOLUMNS(); column++) {
+                int code = board.getPieceCodeAt(row * Board.getCOLUMNS() + column);
+                if (code == Board.EMPTY) {
+                    emptySquares++;
+                    continue;
+                }
+                if (emptySquares > 0) builder.append((char) ('0' + emptySquares));
+                emptySquares = 0;
+                builder.append(PIECE_LETTERS.charAt(code - 1));
+            }
+            if (emptySquares > 0) builder.append((char) ('0' + emptySquares));
+        }
+
+        builder.append(board.isWhiteToMove() ? " w " : " b ");
+        int rights = board.getCastlingRights();
+        if (rights == 0) builder.append('-');
+        for (int i = 0; i < CASTLING_RIGHTS.length; i++) {
+            if ((rights & CASTLING_RIGHTS[i]) != 0) builder.append(CASTLING_LETTERS.charAt(i));
+        }
+
+        builder.append(' ');
+        int enPassantSquare = board.getEnPassantSquare();
+        if (enPassantSquare == Board.NO_SQUARE) {
+            builder.append('-');
+        } else {
+            builder.append((char) ('a' + Board.getColumnAtSquare(enPassantSquare)));
+            builder.append((char) ('0' + Board.getROWS() - Board.getRowAtSquare(enPassantSquare)));
+        }
+        return builder.append(' ').append(board.getHalfmoveClock()).append(' ').append(board.getFullmoveNumber());
+    }
+
+    /**
+     * Checks the piece placement field without touching any board. Every rank must cover exactly eight squares, there
+     * must be eight ranks, each side must have exactly one king, and no pawn may stand on the first or eighth rank.
+     *
+     * @return The index just after the field.
+     */
+    private static int checkPlacement(CharSequence text, int start) {
+        int columns = Board.getCOLUMNS();
+        int row = 0;
+        int column = 0;
+        int whiteKings = 0;
+        int blackKings = 0;
+        int i = start;
+        for (; i < text.length(); i++) {
+            char current = text.charAt(i);
+            if (current == ' ') break;
+            if (current == '/') {
+                if (column != columns || row == Board.getROWS() - 1) throw malformed(text, "piece placement");
+                row++;
+                column = 0;
+                continue;
+            }
+            if (current >= '1' && current <= '8') {
+                column += current - '0';
+                if (column > columns) throw malformed(text, "piece placement");
+                continue;
+            }
+            int letter = PIECE_LETTERS.indexOf(current);
+            if (letter < 0 || column >= columns) throw malformed(text, "piece placement");
+            if (current == 'K') whiteKings++;
+            else if (current == 'k') blackKings++;
+            else if ((current == 'P' || current == 'p') && (row == 0 || row == Board.getROWS() - 1)) {
+                throw invalid(text, "a pawn stands on the first or eighth rank");
+            }
+            column++;
+        }
+        if (row != Board.getROWS() - 1 || column != columns) throw malformed(text, "piece placement");
+        if (whiteKings != 1 || blackKings != 1) throw invalid(text, "each side must have exactly one king");
+        return i;
+    }
+
+    /**
+     * Puts the pieces of a piece placement field that {@link #checkPlacement} has accepted on the board.
+     */
+    private static void placePieces(Board board, CharSequence text, int start) {
+        int square = 0;
+        for (int i = start; i < text.length(); i++) {
+            char current = text.charAt(i);
+            if (current == ' ') break;
+            if (current == '/') continue;
+            if (current >= '1' && current <= '8') {
+                square += current - '0';
+                continue;
+            }
+            board.placePiece(PIECE_LETTERS.indexOf(current) + 1, square++);
+        }
+    }
+
+    private static int skipSpaces(CharSequence text, int index) {
+        while (index < text.length() && text.charAt(index) == ' ') {
+            index++;
+        }
+        return index;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static IllegalArgumentException malformed(CharSequence text, String field) {
+        return new IllegalArgumentException("Malformed " + field + " in FEN: " + text);
+    }
+
+    private static IllegalArgumentException invalid(CharSequence text, String reason) {
+        return new IllegalArgumentException("Impossible position, " + reason + ", in FEN: " + text);
     }
 }
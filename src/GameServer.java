@@ -0,0 +1,384 @@
+package se.liu.marfr380;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Hosts many independent games in one process without any user interface. Clients send moves in coordinate notation
+ * through an in-process API and get the outcome back as a {@link MoveResult}; every move that is played is also
+ * published to an update listener.
+ * <p>
+ * Every game is an actor: it owns its {@link Board} and a mailbox, and handles its messages one at a time on a shared
+ * pool of threads. Moves to different games are validated and played in parallel, moves to the same game in the order
+ * they were sent, and no game is ever touched by two threads at once, so no locks are needed. A game holds no piece
+ * objects or images, only the bitboards and undo stack of its board.
+ * <p>
+ * Usage: {@code GameServer [--games <n>] [--plies <n>] [--threads <n>]} runs a load generator that plays random games
+ * on the given number of boards at once, every game with one move in flight, and reports the memory per game, the moves
+ * per second and the latency from sending a move until its result arrives.
+ */
+public class GameServer implements AutoCloseable
+{
+    private final static int MAX_MESSAGES_PER_RUN = 64;
+    private final static int DEFAULT_GAMES = 10000;
+    private final static int DEFAULT_PLIES = 80;
+    private final static int SCRIPT_COUNT = 256;
+    private final static int ILLEGAL_MOVE_INTERVAL = 16;
+    private final static int GC_ROUNDS = 3;
+
+    private final ExecutorService executor;
+    private final ConcurrentHashMap<Long, Game> games = new ConcurrentHashMap<>();
+    private final AtomicLong nextGameId = new AtomicLong(1);
+    private volatile Consumer<MoveResult> updateListener = null;
+
+    /**
+     * Creates a server whose games run on the given number of threads.
+     *
+     * @param threads The number of threads.
+     */
+    public GameServer(int threads) {
+        this.executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "game-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Sets a listener that is told about every move played in any game. It is called on the thread of the game, so it
+     * must be thread safe and should return quickly.
+     *
+     * @param updateListener The listener, or null for none.
+     */
+    public void setUpdateListener(final Consumer<MoveResult> updateListener) {
+        this.updateListener = updateListener;
+    }
+
+    /**
+     * Starts a game from the start position.
+     *
+     * @return The id of the game.
+     */
+    public long createGame() {
+        return addGame(new Board());
+    }
+
+    /**
+     * Starts a game from a position.
+     *
+     * @param fen The position in FEN.
+     *
+     * @return The id of the game.
+     *
+     * @throws IllegalArgumentException If the FEN is malformed.
+     */
+    public long createGame(String fen) {
+        Board board = new Board();
+        FENConverter.loadPositionFromFEN(board, fen);
+        return addGame(board);
+    }
+
+    /**
+     * Ends a game. Messages already sent to it are still handled.
+     *
+     * @param gameId The id of the game.
+     *
+     * @return True if there was such a game.
+     */
+    public boolean closeGame(long gameId) {
+        return games.remove(gameId) != null;
+    }
+
+    /**
+     * Returns the number of games hosted.
+     *
+     * @return The number of games.
+     */
+    public int getGameCount() {
+        return games.size();
+    }
+
+    /**
+     * Sends a move to a game. It is played if it is legal in the position the game has when the move is handled and
+     * the game is not over yet.
+     *
+     * @param gameId The id of the game.
+     * @param move   The move in coordinate notation, such as "e2e4" or "e7e8q".
+     *
+     * @return The outcome of the move. It fails with an {@link IllegalArgumentException} if there is no such game.
+     */
+    public CompletableFuture<MoveResult> submitMove(long gameId, String move) {
+        CompletableFuture<MoveResult> future = new CompletableFuture<>();
+        Game game = games.get(gameId);
+        if (game == null) {
+            future.completeExceptionally(new IllegalArgumentException("No game with id " + gameId));
+            return future;
+        }
+        game.send(future, () -> game.play(move));
+        return future;
+    }
+
+    /**
+     * Returns the position of a game, after all moves sent to it before have been handled.
+     *
+     * @param gameId The id of the game.
+     *
+     * @return The position in FEN. It fails with an {@link IllegalArgumentException} if there is no such game.
+     */
+    public CompletableFuture<String> getPosition(long gameId) {
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Game game = games.get(gameId);
+        if (game == null) {
+            future.completeExceptionally(new IllegalArgumentException("No game with id " + gameId));
+            return future;
+        }
+        game.send(future, () -> FENConverter.toFEN(game.board));
+        return future;
+    }
+
+    /**
+     * Stops the threads of the server. Messages not yet handled are dropped.
+     */
+    @Override public void close() {
+        executor.shutdownNow();
+    }
+
+    private long addGame(Board board) {
+        long id = nextGameId.getAndIncrement();
+        games.put(id, new Game(id, board));
+        return id;
+    }
+
+    /**
+     * A game and its mailbox. The game is scheduled on the pool when a message arrives while it is idle, and handles
+     * messages until its mailbox is empty or it has handled enough to give other games a turn.
+     */
+    private final class Game implements Runnable
+    {
+        private final long id;
+        private final Board board;
+        private final Queue<Runnable> mailbox = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean scheduled = new AtomicBoolean(false);
+        private int plies = 0;
+        private GameStatus status;
+
+        private Game(final long id, final Board board) {
+            this.id = id;
+            this.board = board;
+            this.status = board.getGameStatus();
+        }
+
+        /**
+         * Sends a message whose answer completes a future. If handling the message fails, the future fails with the
+         * exception and the game goes on with its next message.
+         */
+        private <T> void send(CompletableFuture<T> future, Supplier<T> message) {
+            mailbox.add(() -> {
+                try {
+                    future.complete(message.get());
+                } catch (RuntimeException e) {
+                    future.completeExceptionally(e);
+                }
+            });
+            if (scheduled.compareAndSet(false, true)) executor.execute(this);
+        }
+
+        @Override public void run() {
+            try {
+                for (int i = 0; i < MAX_MESSAGES_PER_RUN; i++) {
+                    Runnable message = mailbox.poll();
+                    if (message == null) break;
+                    message.run();
+                }
+            } finally {
+                scheduled.set(false);
+                // A message may have arrived after the last poll but before the flag was cleared
+                if (!mailbox.isEmpty() && scheduled.compareAndSet(false, true)) executor.execute(this);
+            }
+        }
+
+        /**
+         * Plays a move if it is legal and the game is not over yet. A finished game rejects every move, even though a
+         * drawn position may still have legal moves.
+         */
+        private MoveResult play(String text) {
+            int move = status.isOver() ? Move.NONE : Move.fromString(board, text);
+            if (move != Move.NONE) {
+                board.makeMove(move);
+                plies++;
+                status = board.getGameStatus();
+            }
+            MoveResult result = new MoveResult(id, text, move, plies, board.getZobristKey(), FENConverter.toFEN(board),
+                                               status);
+            Consumer<MoveResult> listener = updateListener;
+            if (move != Move.NONE && listener != null) listener.accept(result);
+            return result;
+        }
+    }
+
+    /**
+     * A client of the load generator. It plays the moves of a script one at a time, and now and then sends a move that
+     * is illegal to exercise the rejection path. Results are handled on a thread pool of the clients, as they would be
+     * by remote clients, so that a client never sends its next move from the thread of its game.
+     */
+    private final static class Client
+    {
+        private final GameServer server;
+        private final long gameId;
+        private final String[] script;
+        private final long[] latencies;
+        private final AtomicInteger latencyCount;
+        private final LongAdder rejected;
+        private final CountDownLatch done;
+        private final ExecutorService responses;
+        private int ply = 0;
+        private int submissions = 0;
+
+        private Client(GameServer server, long gameId, String[] script, long[] latencies, AtomicInteger latencyCount,
+                       LongAdder rejected, CountDownLatch done, ExecutorService responses)
+        {
+            this.server = server;
+            this.gameId = gameId;
+            this.script = script;
+            this.latencies = latencies;
+            this.latencyCount = latencyCount;
+            this.rejected = rejected;
+            this.done = done;
+            this.responses = responses;
+        }
+
+        private void sendNext() {
+            if (ply == script.length) {
+                done.countDown();
+                return;
+            }
+            // The move played two plies ago starts from a square that is now empty or the opponent's
+            boolean illegal = ply > 0 && submissions % ILLEGAL_MOVE_INTERVAL == ILLEGAL_MOVE_INTERVAL - 1;
+            String text = illegal ? script[ply - 1] : script[ply];
+            submissions++;
+            long start = System.nanoTime();
+            server.submitMove(gameId, text).thenAcceptAsync(result -> {
+                int index = latencyCount.getAndIncrement();
+                if (index < latencies.length) latencies[index] = System.nanoTime() - start;
+                if (result.isLegal()) ply++;
+                else rejected.increment();
+                sendNext();
+            }, responses);
+        }
+    }
+
+    /**
+     * Plays random games of up to the given number of plies, in coordinate notation.
+     */
+    private static String[][] createScripts(int plies) {
+        Random random = new Random(1);
+        Board board = new Board();
+        MoveList moves = new MoveList();
+        String[][] scripts = new String[SCRIPT_COUNT][];
+        for (int i = 0; i < SCRIPT_COUNT; i++) {
+            board.resetToStartPosition();
+            List<String> script = new ArrayList<>();
+            while (script.size() < plies) {
+                moves.clear();
+                new MoveGenerator(board).generateLegalMoves(moves);
+                if (moves.isEmpty()) break;
+                int move = moves.get(random.nextInt(moves.size()));
+                script.add(Move.toString(move));
+                board.makeMove(move);
+            }
+            scripts[i] = script.toArray(new String[0]);
+        }
+        return scripts;
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < GC_ROUNDS; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int gameCount = DEFAULT_GAMES;
+        int plies = DEFAULT_PLIES;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games" -> gameCount = Integer.parseInt(args[++i]);
+                case "--plies" -> plies = Integer.parseInt(args[++i]);
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                default -> {
+                    System.err.println("Usage: GameServer [--games <n>] [--plies <n>] [--threads <n>]");
+                    System.exit(1);
+                }
+            }
+        }
+
+        String[][] scripts = createScripts(plies);
+        long totalPlies = 0;
+        for (int i = 0; i < gameCount; i++) {
+            totalPlies += scripts[i % SCRIPT_COUNT].length;
+        }
+
+        ExecutorService responses = Executors.newFixedThreadPool(threads);
+        try (GameServer server = new GameServer(threads)) {
+            LongAdder published = new LongAdder();
+            server.setUpdateListener(result -> published.increment());
+            long heapBefore = usedHeap();
+            long[] gameIds = new long[gameCount];
+            for (int i = 0; i < gameCount; i++) {
+                gameIds[i] = server.createGame();
+            }
+            long heapPerGame = (usedHeap() - heapBefore) / Math.max(1, gameCount);
+
+            long[] latencies = new long[(int) Math.min(Integer.MAX_VALUE - 8, totalPlies * 2)];
+            AtomicInteger latencyCount = new AtomicInteger();
+            LongAdder rejected = new LongAdder();
+            CountDownLatch done = new CountDownLatch(gameCount);
+            long start = System.nanoTime();
+            for (int i = 0; i < gameCount; i++) {
+                new Client(server, gameIds[i], scripts[i % SCRIPT_COUNT], latencies, latencyCount, rejected, done,
+                           responses).sendNext();
+            }
+            done.await(1, TimeUnit.HOURS);
+            double seconds = (System.nanoTime() - start) / 1.0e9;
+
+            int count = Math.min(latencyCount.get(), latencies.length);
+            long[] sorted = Arrays.copyOf(latencies, count);
+            Arrays.sort(sorted);
+            System.out.printf("Games: %d on %d threads, %d bytes of heap per game%n", gameCount, threads, heapPerGame);
+            System.out.printf("Moves: %d played, %d published, %d illegal rejected%n", totalPlies, published.sum(),
+                              rejected.sum());
+            System.out.printf("Time: %.3f s%n", seconds);
+            System.out.printf("Moves per second: %.0f%n", count / Math.max(seconds, 1.0e-9));
+            System.out.printf("Latency: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.1f us%n",
+                              percentile(sorted, 0.50), percentile(sorted, 0.99), percentile(sorted, 0.999),
+                              percentile(sorted, 1.0));
+        } finally {
+            responses.shutdownNow();
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) return 0;
+        int index = (int) Math.min(sorted.length - 1, Math.ceil(fraction * sorted.length) - 1);
+        return sorted[Math.max(0, index)] / 1.0e3;
+    }
+}
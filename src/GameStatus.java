@@ -0,0 +1,42 @@
+package se.liu.marfr380;
+
+/**
+ * Whether a game is still going on, and if not, why it ended. See {@link Board#getGameStatus()}.
+ */
+public enum GameStatus
+{
+    ONGOING("Game in progress"),
+    CHECKMATE("Checkmate"),
+    STALEMATE("Draw by stalemate"),
+    THREEFOLD_REPETITION("Draw by threefold repetition"),
+    FIFTY_MOVE_RULE("Draw by the fifty-move rule"),
+    INSUFFICIENT_MATERIAL("Draw by insufficient material");
+
+    private final String description;
+
+    GameStatus(String description) {
+        this.description = description;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    /**
+     * Checks if the game has ended in a draw.
+     *
+     * @return True for every status except {@link #ONGOING} and {@link #CHECKMATE}.
+     */
+    public boolean isDraw() {
+        return this != ONGOING && this != CHECKMATE;
+    }
+
+    /**
+     * Checks if the game has ended.
+     *
+     * @return True for every status except {@link #ONGOING}.
+     */
+    public boolean isOver() {
+        return this != ONGOING;
+    }
+}
@@ -0,0 +1,209 @@
+package se.liu.marfr380;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Searches with several threads at once using Lazy SMP: every thread runs its own {@link Search} of the same root
+ * position on its own copy of the board, and the threads only cooperate through a shared {@link TranspositionTable}.
+ * The helpers search at slightly different depths and in different move orders, so the entries they store let the main
+ * thread cut off parts of its tree sooner. The result is always the one of the main thread.
+ * <p>
+ * The helper threads are started once and reused for every search, until {@link #shutdown()} is called.
+ * <p>
+ * Usage: {@code LazySMPSearch [--fen <fen>] [--hash <megabytes>] [--threads <n,n,...>] [depth]} prints the time the
+ * search takes to reach the depth for each thread count and the speedup over one thread.
+ */
+public class LazySMPSearch
+{
+    private final static int[] DEFAULT_THREAD_COUNTS = { 1, 2, 4, 8, 16 };
+    private final static int DEFAULT_DEPTH = 7;
+    private final static int DEFAULT_HASH_SIZE = 64;
+    private final static long STOP_POLL_MILLIS = 1;
+    private final static String[] SPEEDUP_FENS = {
+            Board.START_FEN,
+            "r1bqkbnr/pppp1ppp/2n5/4p3/2B1P3/5N2/PPPP1PPP/RNBQK2R b KQkq - 3 3",
+            "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+            "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1" };
+
+    private final TranspositionTable table;
+    private final Search[] searches;
+    private final ExecutorService helpers;
+
+    /**
+     * Creates a search that runs on the given number of threads. The calling thread is the main thread, so
+     * {@code threadCount - 1} helper threads are started.
+     *
+     * @param table       The transposition table all threads share.
+     * @param threadCount The number of threads, at least 1.
+     */
+    public LazySMPSearch(TranspositionTable table, int threadCount) {
+        if (threadCount < 1) throw new IllegalArgumentException("Thread count must be at least 1: " + threadCount);
+        this.table = table;
+        this.searches = new Search[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            searches[i] = new Search(table, i);
+        }
+        this.helpers = threadCount > 1 ? Executors.newFixedThreadPool(threadCount - 1, runnable -> {
+            Thread thread = new Thread(runnable, "search-helper");
+            thread.setDaemon(true);
+            return thread;
+        }) : null;
+    }
+
+    /**
+     * Returns the number of threads the search runs on, including the main thread.
+     *
+     * @return The thread count.
+     */
+    public int getThreadCount() {
+        return searches.length;
+    }
+
+    /**
+     * Returns the transposition table the threads share.
+     *
+     * @return The table.
+     */
+    public TranspositionTable getTable() {
+        return table;
+    }
+
+    /**
+     * Sets a listener that is told the result of every iteration the main thread completes.
+     *
+     * @param iterationListener The listener, or null for none.
+     */
+    public void setIterationListener(final Consumer<SearchResult> iterationListener) {
+        searches[0].setIterationListener(iterationListener);
+    }
+
+    /**
+     * Sets the endgame tables every thread looks up positions in.
+     *
+     * @param tablebases The tables, or null for none.
+     */
+    public void setTablebases(final Tablebases tablebases) {
+        for (Search search : searches) {
+            search.setTablebases(tablebases);
+        }
+    }
+
+    /**
+     * Stops a running search on all threads as soon as possible.
+     */
+    public void stop() {
+        for (Search search : searches) {
+            search.stop();
+        }
+    }
+
+    /**
+     * Searches for the best move of the side to move on all threads. The main thread respects the limits, and the
+     * helpers keep searching deeper until the main thread is done.
+     *
+     * @param position The position to search. It is copied and never modified.
+     * @param limits   When to stop searching.
+     *
+     * @return The result of the main thread, with the nodes of all threads counted.
+     */
+    public SearchResult search(Board position, SearchLimits limits) {
+        SearchLimits helperLimits = new SearchLimits(Search.MAX_DEPTH, limits.getMaxTimeMillis(), SearchLimits.UNLIMITED);
+        List<Future<SearchResult>> futures = new ArrayList<>();
+        for (int i = 1; i < searches.length; i++) {
+            // Copy the board here, so that no helper ever reads the caller's board while it might change.
+            Board copy = new Board(position);
+            Search helper = searches[i];
+            futures.add(helpers.submit(() -> helper.search(copy, helperLimits)));
+        }
+
+        SearchResult result = searches[0].search(position, limits);
+        long nodes = result.getNodes();
+        for (int i = 1; i < searches.length; i++) {
+            nodes += awaitHelper(searches[i], futures.get(i - 1)).getNodes();
+        }
+        return new SearchResult(result.getBestMove(), result.getScore(), result.getPrincipalVariation(),
+                                result.getDepth(), nodes, result.getTimeMillis());
+    }
+
+    /**
+     * Stops the helper threads. The search cannot be used afterwards.
+     */
+    public void shutdown() {
+        stop();
+        if (helpers != null) helpers.shutdownNow();
+    }
+
+    /**
+     * Stops a helper and waits for it. A helper that had not yet started when it was first stopped clears the stop
+     * flag when it starts, so it is stopped again until it has finished.
+     */
+    private static SearchResult awaitHelper(Search helper, Future<SearchResult> future) {
+        while (true) {
+            helper.stop();
+            try {
+                return future.get(STOP_POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException ignored) {
+                // Not done yet, stop it again
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a search helper", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Search helper failed", e.getCause());
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        List<String> fens = new ArrayList<>();
+        int depth = DEFAULT_DEPTH;
+        int hashSize = DEFAULT_HASH_SIZE;
+        int[] threadCounts = DEFAULT_THREAD_COUNTS;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fen" -> fens.add(args[++i]);
+                case "--hash" -> hashSize = Integer.parseInt(args[++i]);
+                case "--threads" -> {
+                    String[] counts = args[++i].split(",");
+                    threadCounts = new int[counts.length];
+                    for (int j = 0; j < counts.length; j++) {
+                        threadCounts[j] = Integer.parseInt(counts[j]);
+                    }
+                }
+                default -> depth = Integer.parseInt(args[i]);
+            }
+        }
+        if (fens.isEmpty()) fens.addAll(List.of(SPEEDUP_FENS));
+
+        System.out.printf("Time to depth %d on %d positions, %d cores available%n", depth, fens.size(),
+                          Runtime.getRuntime().availableProcessors());
+        double baseTime = 0;
+        for (int threads : threadCounts) {
+            TranspositionTable table = new TranspositionTable(hashSize);
+            LazySMPSearch search = new LazySMPSearch(table, threads);
+            long totalTime = 0;
+            long totalNodes = 0;
+            for (String fen : fens) {
+                Board board = new Board();
+                FENConverter.loadPositionFromFEN(board, fen);
+                table.clear();
+                long start = System.nanoTime();
+                SearchResult result = search.search(board, SearchLimits.depth(depth));
+                totalTime += System.nanoTime() - start;
+                totalNodes += result.getNodes();
+            }
+            search.shutdown();
+            double millis = totalTime / 1.0e6;
+            if (baseTime == 0) baseTime = millis;
+            System.out.printf("threads %2d  time %9.1f ms  nodes %12d  nps %10d  speedup %5.2f%n", threads, millis,
+                              totalNodes, (long) (totalNodes / Math.max(millis, 1) * 1000), baseTime / millis);
+        }
+    }
+}
@@ -1,7 +1,42 @@
 package se.liu.marfr380;
 
+/**
+ * A move from one square to another.
+ * <p>
+ * Where moves are generated in bulk, such as in the search, they are passed around as plain {@code int}s instead of
+ * objects. The static methods of this class create and read that encoding:
+ * <ul>
+ * <li>bits 0-5: the source square</li>
+ * <li>bits 6-11: the target square</li>
+ * <li>bits 12-15: the code of the moving piece, see {@link Board#toPieceCode}</li>
+ * <li>bits 16-19: the code of the captured piece, or {@link Board#EMPTY}</li>
+ * <li>bits 20-22: the promotion piece type's ordinal plus one, or 0 for no promotion</li>
+ * <li>bits 23-25: {@link #DOUBLE_PAWN_PUSH}, {@link #EN_PASSANT} and {@link #CASTLING}</li>
+ * </ul>
+ * Since every real move has a moving piece, the value 0 is never a real move and is used for "no move".
+ */
 public class Move
 {
+    /**
+     * The encoded value used when there is no move.
+     */
+    public final static int NONE = 0;
+    /**
+     * Flag of a pawn moving two squares forward.
+     */
+    public final static int DOUBLE_PAWN_PUSH = 1 << 23;
+    /**
+     * Flag of an en passant capture. The captured pawn is not on the target square.
+     */
+    public final static int EN_PASSANT = 1 << 24;
+    /**
+     * Flag of a king move that castles. The rook moves too.
+     */
+    public final static int CASTLING = 1 << 25;
+
+    private final static PieceType[] TYPES = PieceType.values();
+    private final static String PROMOTION_LETTERS = "rnbqkp";
+
     private final int from;
     private final int to;
     public Move(int from, int to){
@@ -9,6 +44,170 @@ public class Move
         this.to = to;
     }
 
+    /**
+     * Encodes a move as an {@code int}.
+     *
+     * @param from      The source square.
+     * @param to        The target square.
+     * @param piece     The code of the moving piece.
+     * @param captured  The code of the captured piece, or {@link Board#EMPTY}.
+     * @param promotion The type the pawn promotes to, or null if the move is not a promotion.
+     * @param flags     Any of {@link #DOUBLE_PAWN_PUSH}, {@link #EN_PASSANT} and {@link #CASTLING}, or 0.
+     *
+     * @return The encoded move.
+     */
+    public static int encode(int from, int to, int piece, int captured, PieceType promotion, int flags) {
+        int promotionBits = promotion == null ? 0 : promotion.ordinal() + 1;
+        return from | to << 6 | piece << 12 | captured << 16 | promotionBits << 20 | flags;
+    }
+
+    /**
+     * Returns the source square of an encoded move.
+     *
+     * @param move The encoded move.
+     *
+     * @return The source square.
+     */
+    public static int getFrom(int move) {
+        return move & 63;
+    }
+
+    /**
+     * Returns the target square of an encoded move.
+     *
+     * @param move The encoded move.
+     *
+     * @return The target square.
+     */
+    public static int getTo(int move) {
+        return (move >>> 6) & 63;
+    }
+
+    /**
+     * Returns the code of the piece that moves.
+     *
+     * @param move The encoded move.
+     *
+     * @return The piece code.
+     */
+    public static int getPiece(int move) {
+        return (move >>> 12) & 15;
+    }
+
+    /**
+     * Returns the code of the piece the move captures.
+     *
+     * @param move The encoded move.
+     *
+     * @return The piece code, or {@link Board#EMPTY} if the move captures nothing.
+     */
+    public static int getCaptured(int move) {
+        return (move >>> 16) & 15;
+    }
+
+    /**
+     * Returns the type a pawn promotes to.
+     *
+     * @param move The encoded move.
+     *
+     * @return The promotion type, or null if the move is not a promotion.
+     */
+    public static PieceType getPromotion(int move) {
+        int promotionBits = (move >>> 20) & 7;
+        return promotionBits == 0 ? null : TYPES[promotionBits - 1];
+    }
+
+    /**
+     * Returns a promotion move with another promotion type.
+     *
+     * @param move      The encoded promotion move.
+     * @param promotion The type to promote to instead.
+     *
+     * @return The encoded move.
+     */
+    public static int withPromotion(int move, PieceType promotion) {
+        return (move & ~(7 << 20)) | (promotion.ordinal() + 1) << 20;
+    }
+
+    public static boolean isCapture(int move) {
+        return getCaptured(move) != Board.EMPTY;
+    }
+
+    public static boolean isPromotion(int move) {
+        return (move & (7 << 20)) != 0;
+    }
+
+    public static boolean isEnPassant(int move) {
+        return (move & EN_PASSANT) != 0;
+    }
+
+    public static boolean isCastling(int move) {
+        return (move & CASTLING) != 0;
+    }
+
+    public static boolean isDoublePawnPush(int move) {
+        return (move & DOUBLE_PAWN_PUSH) != 0;
+    }
+
+    /**
+     * Creates a move object from an encoded move. The object only keeps the squares.
+     *
+     * @param move The encoded move.
+     *
+     * @return The move object.
+     */
+    public static Move decode(int move) {
+        return new Move(getFrom(move), getTo(move));
+    }
+
+    /**
+     * Returns an encoded move in coordinate notation, for example "e2e4" or "e7e8q".
+     *
+     * @param move The encoded move.
+     *
+     * @return The move as a string.
+     */
+    public static String toString(int move) {
+        String squares = squareToString(getFrom(move)) + squareToString(getTo(move));
+        PieceType promotion = getPromotion(move);
+        return promotion == null ? squares : squares + PROMOTION_LETTERS.charAt(promotion.ordinal());
+    }
+
+    /**
+     * Returns the legal move of a position that a move in coordinate notation stands for, such as "e2e4" or "e7e8q". A
+     * pawn that reaches the last row without a promotion letter promotes to a queen.
+     *
+     * @param board The position the move is played in.
+     * @param text  The move in coordinate notation.
+     *
+     * @return The encoded move, or {@link #NONE} if the text is malformed or not a legal move in the position.
+     */
+    public static int fromString(Board board, CharSequence text) {
+        if (text.length() < 4 || text.length() > 5) return NONE;
+        for (int i = 0; i < 4; i++) {
+            char c = text.charAt(i);
+            boolean valid = i % 2 == 0 ? c >= 'a' && c < 'a' + Board.getCOLUMNS() : c >= '1' && c < '1' + Board.getROWS();
+            if (!valid) return NONE;
+        }
+        int from = (Board.getROWS() - (text.charAt(1) - '0')) * Board.getCOLUMNS() + text.charAt(0) - 'a';
+        int to = (Board.getROWS() - (text.charAt(3) - '0')) * Board.getCOLUMNS() + text.charAt(2) - 'a';
+        PieceType promotion = text.length() == 5 ? promotionFromLetter(text.charAt(4)) : PieceType.QUEEN;
+        if (promotion == null || (new MoveGenerator(board).getLegalTargets(from) & 1L << to) == 0) return NONE;
+        return board.createMove(from, to, promotion);
+    }
+
+    /**
+     * Returns the promotion type of a letter as used in coordinate notation.
+     *
+     * @param letter The letter, in upper or lower case.
+     *
+     * @return The piece type, or null if the letter is not a promotion piece.
+     */
+    public static PieceType promotionFromLetter(char letter) {
+        int index = "rnbq".indexOf(Character.toLowerCase(letter));
+        return index < 0 ? null : TYPES[index];
+    }
+
     public int getFrom() {
         return from;
     }
@@ -16,4 +215,39 @@ public class Move
     public int getTo() {
         return to;
     }
+
+    /**
+     * Returns the algebraic name of a square, for example "e4".
+     *
+     * @param square The square index.
+     *
+     * @return The name of the square.
+     */
+    public static String squareToString(int square) {
+        char file = (char) ('a' + Board.getColumnAtSquare(square));
+        char rank = (char) ('0' + Board.getROWS() - Board.getRowAtSquare(square));
+        return "" + file + rank;
+    }
+
+    /**
+     * Returns the square index of an algebraic square name such as "e4".
+     *
+     * @param name The name of the square.
+     *
+     * @return The square index.
+     */
+    public static int squareFromString(String name) {
+        int column = name.charAt(0) - 'a';
+        int row = Board.getROWS() - (name.charAt(1) - '0');
+        return row * Board.getCOLUMNS() + column;
+    }
+
+    /**
+     * Returns the move in coordinate notation, for example "e2e4".
+     *
+     * @return The move as a string.
+     */
+    @Override public String toString() {
+        return squareToString(from) + squareToString(to);
+    }
 }
@@ -0,0 +1,251 @@
+package se.liu.marfr380;
+
+/**
+ * Generates the legal moves of the side to move in one pass.
+ * <p>
+ * When it is created, the generator finds the pieces giving check, the squares a piece may move to in order to stop
+ * that check and the pieces that are pinned to their king. A move is then legal if it goes to a square in the check
+ * mask and, for a pinned piece, stays on the line through the king and the piece. King moves are tested against the
+ * attack map the board maintains, and en passant captures are verified separately since they remove two pieces from
+ * the same row. No move has to be played to find out whether it is legal.
+ */
+public class MoveGenerator
+{
+    private final static long LAST_ROWS = 0xFF000000000000FFL;
+
+    private final Board board;
+    private final PieceColor us;
+    private final PieceColor them;
+    private final long own;
+    private final long occupied;
+    private final int kingSquare;
+    private final long checkers;
+    private final long checkMask;
+    private final long pinned;
+
+    /**
+     * Prepares move generation for the side to move in the current position of the board. The generator must not be
+     * used after the position has changed.
+     *
+     * @param board The board to generate moves on.
+     */
+    public MoveGenerator(Board board) {
+        this.board = board;
+        this.us = board.isWhiteToMove() ? PieceColor.WHITE : PieceColor.BLACK;
+        this.them = board.isWhiteToMove() ? PieceColor.BLACK : PieceColor.WHITE;
+        this.own = board.getPieces(us);
+        this.occupied = board.getOccupied();
+        long king = board.getPieces(PieceType.KING, us);
+        if (king == 0) {
+            kingSquare = Board.NO_SQUARE;
+            checkers = 0L;
+            checkMask = ~0L;
+            pinned = 0L;
+            return;
+        }
+        kingSquare = Long.numberOfTrailingZeros(king);
+        checkers = board.isSquareAttacked(kingSquare, them) ? board.getAttackers(kingSquare, them, occupied) : 0L;
+        if (checkers == 0) {
+            checkMask = ~0L;
+        } else if (Long.bitCount(checkers) == 1) {
+            checkMask = checkers | Attacks.between(kingSquare, Long.numberOfTrailingZeros(checkers));
+        } else {
+            checkMask = 0L;
+        }
+        pinned = findPinnedPieces();
+    }
+
+    /**
+     * Checks if the side to move is in check.
+     *
+     * @return True if the king of the side to move is attacked.
+     */
+    public boolean isInCheck() {
+        return checkers != 0;
+    }
+
+    /**
+     * Returns the pieces of the side to move that are pinned to their king.
+     *
+     * @return A bitboard of the pinned pieces.
+     */
+    public long getPinnedPieces() {
+        return pinned;
+    }
+
+    /**
+     * Checks if the side to move has at least one legal move.
+     *
+     * @return True if there is a legal move, false on checkmate or stalemate.
+     */
+    public boolean hasLegalMove() {
+        for (long pieces = own; pieces != 0; pieces &= pieces - 1) {
+            if (getLegalTargets(Long.numberOfTrailingZeros(pieces)) != 0) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Adds all legal moves of the side to move to a list, encoded as described in {@link Move}. Promotions are added
+     * once for every type a pawn can promote to.
+     *
+     * @param moves The list to add the moves to.
+     */
+    public void generateLegalMoves(MoveList moves) {
+        for (long pieces = own; pieces != 0; pieces &= pieces - 1) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            board.addMoves(from, getLegalTargets(from), moves);
+        }
+    }
+
+    /**
+     * Adds the legal captures and promotions of the side to move to a list, including en passant captures and
+     * promotions that capture nothing. Together with {@link #generateQuietMoves(MoveList, long[])} this gives every
+     * legal move once.
+     *
+     * @param moves   The list to add the moves to.
+     * @param targets An array of 64 where the legal targets of every piece of the side to move are saved by square, so
+     *                that the quiet moves can be generated later without finding them again.
+     */
+    public void generateCaptures(MoveList moves, long[] targets) {
+        long enemy = board.getPieces(them);
+        for (long pieces = own; pieces != 0; pieces &= pieces - 1) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            targets[from] = getLegalTargets(from);
+            board.addMoves(from, targets[from] & (enemy | getPawnNoisyTargets(from)), moves);
+        }
+    }
+
+    /**
+     * Adds the legal moves of the side to move that neither capture nor promote to a list, castling included.
+     *
+     * @param moves   The list to add the moves to.
+     * @param targets The legal targets saved by {@link #generateCaptures(MoveList, long[])} in the same position.
+     */
+    public void generateQuietMoves(MoveList moves, long[] targets) {
+        long enemy = board.getPieces(them);
+        for (long pieces = own; pieces != 0; pieces &= pieces - 1) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            board.addMoves(from, targets[from] & ~(enemy | getPawnNoisyTargets(from)), moves);
+        }
+    }
+
+    /**
+     * Checks if a move, for example one from the transposition table, is a legal move of the side to move in the
+     * current position.
+     *
+     * @param move The encoded move.
+     *
+     * @return True if the move is legal and encoded as the board would encode it.
+     */
+    public boolean isLegal(int move) {
+        if (move == Move.NONE) return false;
+        int from = Move.getFrom(move);
+        int to = Move.getTo(move);
+        if (board.getPieceCodeAt(from) != Move.getPiece(move) || (getLegalTargets(from) & bit(to)) == 0) return false;
+        PieceType promotion = Move.getPromotion(move);
+        return board.createMove(from, to, promotion == null ? PieceType.QUEEN : promotion) == move;
+    }
+
+    /**
+     * Adds the legal moves of the piece on the given square to a list.
+     *
+     * @param square The square of the piece.
+     * @param moves  The list to add the moves to.
+     */
+    public void generateLegalMoves(int square, MoveList moves) {
+        board.addMoves(square, getLegalTargets(square), moves);
+    }
+
+    /**
+     * Returns the squares the piece on the given square can legally move to. Pieces that do not belong to the side to
+     * move have no legal moves.
+     *
+     * @param square The square of the piece.
+     *
+     * @return A bitboard of the target squares, including castling and en passant targets.
+     */
+    public long getLegalTargets(int square) {
+        if ((own & bit(square)) == 0) return 0L;
+        PieceType type = Board.typeOfCode(board.getPieceCodeAt(square));
+        if (type == PieceType.KING) return getKingTargets(square);
+        if (Long.bitCount(checkers) > 1) return 0L;
+
+        long targets = switch (type) {
+            case KNIGHT -> Attacks.knight(square);
+            case BISHOP -> Attacks.bishop(square, occupied);
+            case ROOK -> Attacks.rook(square, occupied);
+            case QUEEN -> Attacks.queen(square, occupied);
+            case PAWN -> getPawnTargets(square);
+            default -> 0L;
+        };
+        targets &= ~own & checkMask;
+        if ((pinned & bit(square)) != 0) targets &= Attacks.line(kingSquare, square);
+        if (type == PieceType.PAWN) targets |= getEnPassantTarget(square);
+        return targets;
+    }
+
+    /**
+     * Returns the empty squares a pawn on the given square would capture or promote on, and nothing for other pieces.
+     */
+    private long getPawnNoisyTargets(int square) {
+        if ((board.getPieces(PieceType.PAWN, us) & bit(square)) == 0) return 0L;
+        long noisy = LAST_ROWS;
+        if (board.getEnPassantSquare() != Board.NO_SQUARE) noisy |= bit(board.getEnPassantSquare());
+        return noisy;
+    }
+
+    private long getPawnTargets(int square) {
+        int forward = us == PieceColor.WHITE ? -8 : 8;
+        int startRow = us == PieceColor.WHITE ? Board.getROWS() - 2 : 1;
+        long targets = Attacks.pawn(us, square) & board.getPieces(them);
+        int oneStep = square + forward;
+        if ((occupied & bit(oneStep)) == 0) {
+            targets |= bit(oneStep);
+            int twoSteps = oneStep + forward;
+            if (Board.getRowAtSquare(square) == startRow && (occupied & bit(twoSteps)) == 0) targets |= bit(twoSteps);
+        }
+        return targets;
+    }
+
+    private long getEnPassantTarget(int square) {
+        int target = board.getEnPassantSquare();
+        if (target == Board.NO_SQUARE || (Attacks.pawn(us, square) & bit(target)) == 0) return 0L;
+        int captured = target + (us == PieceColor.WHITE ? 8 : -8);
+        if (kingSquare == Board.NO_SQUARE) return bit(target);
+        long occupancyAfter = (occupied ^ bit(square) ^ bit(captured)) | bit(target);
+        long attackers = board.getAttackers(kingSquare, them, occupancyAfter) & ~bit(captured);
+        return attackers == 0 ? bit(target) : 0L;
+    }
+
+    private long getKingTargets(int square) {
+        long targets = Attacks.king(square) & ~own & ~board.getAttackedSquares(them);
+        // A checking slider also attacks the square behind the king, which the attack map cannot see past the king.
+        long sliders = board.getPieces(PieceType.ROOK, them) | board.getPieces(PieceType.BISHOP, them) |
+                       board.getPieces(PieceType.QUEEN, them);
+        for (long sliderCheckers = checkers & sliders; sliderCheckers != 0; sliderCheckers &= sliderCheckers - 1) {
+            int checker = Long.numberOfTrailingZeros(sliderCheckers);
+            targets &= ~(Attacks.line(checker, square) & ~Attacks.between(checker, square) & ~bit(checker));
+        }
+        if (board.canCastle(us, true)) targets |= bit(square + 2);
+        if (board.canCastle(us, false)) targets |= bit(square - 2);
+        return targets;
+    }
+
+    private long findPinnedPieces() {
+        long enemy = board.getPieces(them);
+        long queens = board.getPieces(PieceType.QUEEN, them);
+        long snipers = (Attacks.rook(kingSquare, enemy) & (board.getPieces(PieceType.ROOK, them) | queens)) |
+                       (Attacks.bishop(kingSquare, enemy) & (board.getPieces(PieceType.BISHOP, them) | queens));
+        long result = 0L;
+        for (; snipers != 0; snipers &= snipers - 1) {
+            long blockers = Attacks.between(kingSquare, Long.numberOfTrailingZeros(snipers)) & occupied;
+            if (Long.bitCount(blockers) == 1) result |= blockers & own;
+        }
+        return result;
+    }
+
+    private static long bit(int square) {
+        return 1L << square;
+    }
+}
@@ -0,0 +1,101 @@
+package se.liu.marfr380;
+
+import java.util.Arrays;
+
+/**
+ * What a search has learned about which quiet moves cause cutoffs, used by {@link MovePicker} to order quiet moves.
+ * <ul>
+ * <li>Killer moves: the last two quiet moves that caused a cutoff at each ply. Positions at the same ply are often
+ * alike, so a move that refuted one is tried early in the others.</li>
+ * <li>History: a score for every piece and target square, raised by the square of the depth whenever that move causes
+ * a cutoff, so that moves that have worked anywhere in the tree come first.</li>
+ * <li>Counter moves: for every piece and target square of the previous move, the quiet move that last refuted it.</li>
+ * </ul>
+ * A history belongs to one search thread.
+ */
+public class MoveHistory
+{
+    private final static int SQUARES = 64;
+    private final static int PIECE_CODES = 13;
+    private final static int KILLERS_PER_PLY = 2;
+    private final static int MAX_HISTORY = 1 << 20;
+
+    private final int[][] killers = new int[Search.MAX_DEPTH + 1][KILLERS_PER_PLY];
+    private final int[] history = new int[PIECE_CODES * SQUARES];
+    private final int[] counterMoves = new int[PIECE_CODES * SQUARES];
+
+    /**
+     * Prepares for a new search: killers are forgotten since plies are counted from a new root, and history scores are
+     * halved so that recent cutoffs weigh more than old ones.
+     */
+    public void newSearch() {
+        for (int[] plyKillers : killers) {
+            Arrays.fill(plyKillers, Move.NONE);
+        }
+        for (int i = 0; i < history.length; i++) {
+            history[i] /= 2;
+        }
+    }
+
+    /**
+     * Records a quiet move that caused a cutoff.
+     *
+     * @param move         The move.
+     * @param previousMove The move played before it, or {@link Move#NONE} at the root.
+     * @param ply          The ply of the position the move was played in.
+     * @param depth        The remaining depth of the position.
+     */
+    public void addCutoff(int move, int previousMove, int ply, int depth) {
+        int[] plyKillers = killers[ply];
+        if (plyKillers[0] != move) {
+            plyKillers[1] = plyKillers[0];
+            plyKillers[0] = move;
+        }
+        int index = indexOf(move);
+        history[index] += depth * depth;
+        if (history[index] > MAX_HISTORY) {
+            for (int i = 0; i < history.length; i++) {
+                history[i] /= 2;
+            }
+        }
+        if (previousMove != Move.NONE) counterMoves[indexOf(previousMove)] = move;
+    }
+
+    /**
+     * Returns a killer move of a ply.
+     *
+     * @param ply   The ply.
+     * @param index 0 for the most recent killer, 1 for the one before.
+     *
+     * @return The move, or {@link Move#NONE}.
+     */
+    public int getKiller(int ply, int index) {
+        return killers[ply][index];
+    }
+
+    /**
+     * Returns the history score of a move.
+     *
+     * @param move The move.
+     *
+     * @return The score, 0 for moves that have never caused a cutoff.
+     */
+    public int getHistory(int move) {
+        return history[indexOf(move)];
+    }
+
+    /**
+     * Returns the quiet move that last refuted a move.
+     *
+     * @param previousMove The move to answer, or {@link Move#NONE}.
+     *
+     * @return The counter move, or {@link Move#NONE}.
+     */
+    public int getCounterMove(int previousMove) {
+        return previousMove == Move.NONE ? Move.NONE : counterMoves[indexOf(previousMove)];
+    }
+
+    private static int indexOf(int move) {
+        return Move.getPiece(move) * SQUARES + Move.getTo(move);
+    }
+}
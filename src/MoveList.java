@@ -0,0 +1,126 @@
+package se.liu.marfr380;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of encoded moves, see {@link Move}, backed by an {@code int[]}.
+ * <p>
+ * The list is meant to be created once and reused: {@link #clear()} keeps the array, so filling the list again does
+ * not allocate unless it has to grow past its largest size so far.
+ */
+public class MoveList
+{
+    /**
+     * The default capacity, enough for the legal moves of any position.
+     */
+    public final static int DEFAULT_CAPACITY = 256;
+
+    private int[] moves;
+    private int size = 0;
+
+    /**
+     * Creates an empty list with the default capacity.
+     */
+    public MoveList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates an empty list.
+     *
+     * @param capacity The number of moves the list can hold before it has to grow.
+     */
+    public MoveList(int capacity) {
+        this.moves = new int[Math.max(1, capacity)];
+    }
+
+    /**
+     * Adds a move to the end of the list.
+     *
+     * @param move The encoded move.
+     */
+    public void add(int move) {
+        if (size == moves.length) moves = Arrays.copyOf(moves, size * 2);
+        moves[size++] = move;
+    }
+
+    /**
+     * Returns the move at an index.
+     *
+     * @param index The index, less than {@link #size()}.
+     *
+     * @return The encoded move.
+     */
+    public int get(int index) {
+        return moves[index];
+    }
+
+    /**
+     * Replaces the move at an index.
+     *
+     * @param index The index, less than {@link #size()}.
+     * @param move  The encoded move.
+     */
+    public void set(int index, int move) {
+        moves[index] = move;
+    }
+
+    /**
+     * Swaps the moves at two indices.
+     *
+     * @param first  The first index.
+     * @param second The second index.
+     */
+    public void swap(int first, int second) {
+        int move = moves[first];
+        moves[first] = moves[second];
+        moves[second] = move;
+    }
+
+    /**
+     * Checks if the list contains a move.
+     *
+     * @param move The encoded move.
+     *
+     * @return True if the move is in the list.
+     */
+    public boolean contains(int move) {
+        for (int i = 0; i < size; i++) {
+            if (moves[i] == move) return true;
+        }
+        return false;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all moves but keeps the capacity.
+     */
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the moves as a new array.
+     *
+     * @return A copy of the moves in the list.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(moves, size);
+    }
+
+    @Override public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) builder.append(", ");
+            builder.append(Move.toString(moves[i]));
+        }
+        return builder.append(']').toString();
+    }
+}
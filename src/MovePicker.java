@@ -0,0 +1,207 @@
+package se.liu.marfr380;
+
+/**
+ * Hands out the legal moves of a position one at a time in the order a search should try them, generating each group of
+ * moves only when the ones before it are used up:
+ * <ol>
+ * <li>the hash move, checked for legality without generating anything,</li>
+ * <li>captures and promotions, the most valuable victim first and among those the cheapest attacker first, except that
+ * captures that lose material by {@link StaticExchange} come after all others,</li>
+ * <li>the two killer moves of the ply,</li>
+ * <li>the remaining quiet moves, the counter move of the previous move first and then by history score.</li>
+ * </ol>
+ * Most nodes of an alpha-beta search cut off on their first move or two, so in most nodes the quiet moves are never
+ * generated at all. Within a stage the best remaining move is selected when it is asked for, rather than sorting the
+ * whole stage up front. No move is handed out twice.
+ * <p>
+ * For the quiescence search a picker can instead hand out only the captures and promotions that do not lose material,
+ * see {@link #resetCaptures}.
+ * <p>
+ * A picker is reused for every node at one ply, see {@link #reset}. Besides the {@link MoveGenerator} of each
+ * position it allocates nothing.
+ */
+public class MovePicker
+{
+    private final static int MAX_MOVES = 256;
+    private final static int STAGE_HASH = 0, STAGE_GENERATE_CAPTURES = 1, STAGE_CAPTURES = 2, STAGE_KILLERS = 3,
+            STAGE_GENERATE_QUIETS = 4, STAGE_QUIETS = 5, STAGE_DONE = 6;
+    private final static int COUNTER_MOVE_SCORE = 1 << 30;
+
+    private final MoveHistory history;
+    private final long orderingSeed;
+    private final MoveList moves = new MoveList(MAX_MOVES);
+    private final int[] scores = new int[MAX_MOVES];
+    private final long[] targets = new long[64];
+
+    private MoveGenerator generator = null;
+    private Board board = null;
+    private int stage = STAGE_DONE;
+    private boolean capturesOnly = false;
+    private int index = 0;
+    private int hashMove = Move.NONE;
+    private int firstKiller = Move.NONE;
+    private int secondKiller = Move.NONE;
+    private int killersTried = 0;
+    private int counterMove = Move.NONE;
+
+    /**
+     * Creates a picker that orders quiet moves by the given history.
+     *
+     * @param history      The killer, history and counter move tables.
+     * @param orderingSeed 0 to order quiet moves with equal scores by generation order, otherwise a seed for breaking
+     *                     their ties in a random order of its own.
+     */
+    public MovePicker(MoveHistory history, long orderingSeed) {
+        this.history = history;
+        this.orderingSeed = orderingSeed;
+    }
+
+    /**
+     * Starts handing out the moves of the current position of a board.
+     *
+     * @param board        The board. It must be back in the same position every time {@link #next()} is called.
+     * @param hashMove     The move from the transposition table, or {@link Move#NONE}. It need not be legal.
+     * @param ply          The distance of the position from the root, which selects the killer moves.
+     * @param previousMove The move that led to the position, or {@link Move#NONE}.
+     */
+    public void reset(Board board, int hashMove, int ply, int previousMove) {
+        this.board = board;
+        this.generator = new MoveGenerator(board);
+        this.stage = STAGE_HASH;
+        this.capturesOnly = false;
+        this.hashMove = hashMove;
+        this.firstKiller = history.getKiller(ply, 0);
+        this.secondKiller = history.getKiller(ply, 1);
+        this.killersTried = 0;
+        this.counterMove = history.getCounterMove(previousMove);
+    }
+
+    /**
+     * Starts handing out the captures and promotions of the current position of a board that do not lose material, and
+     * no other moves.
+     *
+     * @param board The board. It must be back in the same position every time {@link #next()} is called.
+     */
+    public void resetCaptures(Board board) {
+        this.board = board;
+        this.generator = new MoveGenerator(board);
+        this.stage = STAGE_GENERATE_CAPTURES;
+        this.capturesOnly = true;
+        this.hashMove = Move.NONE;
+    }
+
+    /**
+     * Returns the next move to try.
+     *
+     * @return The encoded move, or {@link Move#NONE} when every legal move has been handed out.
+     */
+    public int next() {
+        if (stage == STAGE_HASH) {
+            stage = STAGE_GENERATE_CAPTURES;
+            if (generator.isLegal(hashMove)) return hashMove;
+        }
+        if (stage == STAGE_GENERATE_CAPTURES) {
+            stage = STAGE_CAPTURES;
+            moves.clear();
+            index = 0;
+            generator.generateCaptures(moves, targets);
+            scoreCaptures();
+        }
+        if (stage == STAGE_CAPTURES) {
+            while (index < moves.size()) {
+                int move = selectNext();
+                if (capturesOnly && scores[index - 1] < 0) break;
+                if (move != hashMove) return move;
+            }
+            stage = capturesOnly ? STAGE_DONE : STAGE_KILLERS;
+        }
+        if (stage == STAGE_KILLERS) {
+            while (killersTried < 2) {
+                int killer = killersTried++ == 0 ? firstKiller : secondKiller;
+                if (killer != hashMove && isQuiet(killer) && generator.isLegal(killer)) return killer;
+            }
+            stage = STAGE_GENERATE_QUIETS;
+        }
+        if (stage == STAGE_GENERATE_QUIETS) {
+            stage = STAGE_QUIETS;
+            moves.clear();
+            index = 0;
+            generator.generateQuietMoves(moves, targets);
+            scoreQuiets();
+        }
+        if (stage == STAGE_QUIETS) {
+            while (index < moves.size()) {
+                int move = selectNext();
+                if (move != hashMove && move != firstKiller && move != secondKiller) return move;
+            }
+            stage = STAGE_DONE;
+        }
+        return Move.NONE;
+    }
+
+    /**
+     * Checks if a move neither captures nor promotes, the kind of move killers, history and counter moves are kept
+     * for.
+     *
+     * @param move The encoded move.
+     *
+     * @return True for a quiet move, false for {@link Move#NONE}.
+     */
+    public static boolean isQuiet(int move) {
+        return move != Move.NONE && !Move.isCapture(move) && !Move.isPromotion(move);
+    }
+
+    /**
+     * Scores captures and promotions by the value they win, less a small part of the value of the moving piece. Moves
+     * that may lose the moving piece for less are checked with the static exchange evaluation, and those that lose
+     * material get its negative result as their score.
+     */
+    private void scoreCaptures() {
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            int gain = Move.isCapture(move) ? Evaluation.pieceValue(Board.typeOfCode(Move.getCaptured(move))) : 0;
+            PieceType promotion = Move.getPromotion(move);
+            if (promotion != null) gain += Evaluation.pieceValue(promotion);
+            PieceType mover = Board.typeOfCode(Move.getPiece(move));
+            int moverValue = Evaluation.pieceValue(mover);
+            scores[i] = gain * 16 - moverValue / 16;
+            if (promotion != null || moverValue > gain) {
+                int exchange = StaticExchange.evaluate(board, move);
+                if (exchange < 0) scores[i] = exchange;
+            }
+        }
+    }
+
+    private void scoreQuiets() {
+        for (int i = 0; i < moves.size(); i++) {
+            int move = moves.get(i);
+            int score = move == counterMove ? COUNTER_MOVE_SCORE : history.getHistory(move);
+            if (orderingSeed != 0) score += orderingNoise(move);
+            scores[i] = score;
+        }
+    }
+
+    /**
+     * Moves the highest scoring of the remaining moves of the stage to the front and returns it.
+     */
+    private int selectNext() {
+        int best = index;
+        for (int i = index + 1; i < moves.size(); i++) {
+            if (scores[i] > scores[best]) best = i;
+        }
+        moves.swap(best, index);
+        int score = scores[best];
+        scores[best] = scores[index];
+        scores[index] = score;
+        return moves.get(index++);
+    }
+
+    /**
+     * Returns a small number that depends on the move and the seed, used to order quiet moves differently in every
+     * helper thread.
+     */
+    private int orderingNoise(int move) {
+        long hash = (move + orderingSeed) * 0xD6E8FEB86659FD93L;
+        return (int) (hash >>> 58);
+    }
+}
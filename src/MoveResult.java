@@ -0,0 +1,25 @@
+package se.liu.marfr380;
+
+/**
+ * The outcome of a move sent to a game hosted by a {@link GameServer}: whether it was legal, and the state of the game
+ * after it.
+ *
+ * @param gameId      The id of the game.
+ * @param text        The move as it was sent, in coordinate notation.
+ * @param move        The encoded move that was played, see {@link Move}, or {@link Move#NONE} if it was rejected.
+ * @param ply         The number of moves played in the game so far.
+ * @param positionKey The Zobrist key of the position after the move, or of the unchanged position if it was rejected.
+ * @param fen         The position after the move in FEN, or the unchanged position if it was rejected.
+ * @param status      Whether the game is still going on after the move, or how it ended.
+ */
+public record MoveResult(long gameId, String text, int move, int ply, long positionKey, String fen, GameStatus status)
+{
+    /**
+     * Checks if the move was legal and played.
+     *
+     * @return True if the move was played.
+     */
+    public boolean isLegal() {
+        return move != Move.NONE;
+    }
+}
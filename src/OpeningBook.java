@@ -0,0 +1,248 @@
+package se.liu.marfr380;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * An opening book in the Polyglot format: a sorted array of 16-byte big-endian entries, each holding a position key,
+ * a move, a weight and a learn value. Positions are looked up by their {@link PolyglotKeys}, so any Polyglot book can
+ * be read, as well as the books written by {@link OpeningBookBuilder}.
+ * <p>
+ * The file is memory-mapped and binary-searched in place, so a probe reads only the few entries it needs and copies
+ * nothing to the heap, however large the book is. The mapping is split into segments of at most 1 GiB, since one
+ * mapping cannot be larger than 2 GiB.
+ * <p>
+ * Usage: {@code OpeningBook <book.bin> [fen]} lists the book moves of a position, the start position by default, and
+ * measures the time of a probe.
+ */
+public class OpeningBook implements Closeable
+{
+    /**
+     * The size of an entry in bytes.
+     */
+    public final static int ENTRY_SIZE = 16;
+    private final static int ENTRIES_PER_SEGMENT = 1 << 26;
+    private final static int KEY_OFFSET = 0, MOVE_OFFSET = 8, WEIGHT_OFFSET = 10;
+    private final static PieceType[] PROMOTIONS = { null, PieceType.KNIGHT, PieceType.BISHOP, PieceType.ROOK, PieceType.QUEEN };
+    private final static int TIMED_PROBES = 1_000_000;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer[] segments;
+    private final long entryCount;
+
+    private OpeningBook(FileChannel channel) throws IOException {
+        this.channel = channel;
+        this.entryCount = channel.size() / ENTRY_SIZE;
+        int segmentCount = (int) ((entryCount + ENTRIES_PER_SEGMENT - 1) / ENTRIES_PER_SEGMENT);
+        this.segments = new MappedByteBuffer[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            long first = (long) i * ENTRIES_PER_SEGMENT;
+            long entries = Math.min(ENTRIES_PER_SEGMENT, entryCount - first);
+            segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, first * ENTRY_SIZE, entries * ENTRY_SIZE);
+        }
+    }
+
+    /**
+     * Opens a book file.
+     *
+     * @param path The file.
+     *
+     * @return The book.
+     *
+     * @throws IOException If the file cannot be opened or mapped.
+     */
+    public static OpeningBook open(Path path) throws IOException {
+        return new OpeningBook(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * Returns the number of entries in the book.
+     *
+     * @return The number of entries.
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * Adds the legal book moves of a position to a list, in the order of the book, which is by falling weight.
+     *
+     * @param board The position.
+     * @param moves The list to add the moves to.
+     */
+    public void getMoves(Board board, MoveList moves) {
+        long key = PolyglotKeys.compute(board);
+        for (long i = findFirst(key); i < entryCount && getKey(i) == key; i++) {
+            int move = toMove(board, getBookMove(i));
+            if (move != Move.NONE) moves.add(move);
+        }
+    }
+
+    /**
+     * Returns the book move of a position with the highest weight.
+     *
+     * @param board The position.
+     *
+     * @return The encoded move, or {@link Move#NONE} if the position is not in the book.
+     */
+    public int getBestMove(Board board) {
+        long key = PolyglotKeys.compute(board);
+        int best = Move.NONE;
+        int bestWeight = -1;
+        for (long i = findFirst(key); i < entryCount && getKey(i) == key; i++) {
+            int move = toMove(board, getBookMove(i));
+            if (move != Move.NONE && getWeight(i) > bestWeight) {
+                best = move;
+                bestWeight = getWeight(i);
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Picks a book move of a position at random, with chances in proportion to the weights of the moves.
+     *
+     * @param board  The position.
+     * @param random The random number generator.
+     *
+     * @return The encoded move, or {@link Move#NONE} if the position is not in the book.
+     */
+    public int pickMove(Board board, Random random) {
+        long key = PolyglotKeys.compute(board);
+        long first = findFirst(key);
+        long total = 0;
+        for (long i = first; i < entryCount && getKey(i) == key; i++) {
+            total += getWeight(i);
+        }
+        if (total == 0) return getBestMove(board);
+        long pick = (long) (random.nextDouble() * total);
+        for (long i = first; i < entryCount && getKey(i) == key; i++) {
+            pick -= getWeight(i);
+            if (pick < 0) {
+                int move = toMove(board, getBookMove(i));
+                return move != Move.NONE ? move : getBestMove(board);
+            }
+        }
+        return Move.NONE;
+    }
+
+    @Override public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Returns the Polyglot encoding of a move: the target file and row in bits 0-5, the source file and row in bits
+     * 6-11 and the promotion piece in bits 12-14. Rows count from the first rank, and castling is written as the king
+     * taking its own rook.
+     *
+     * @param move The encoded move, see {@link Move}.
+     *
+     * @return The Polyglot move.
+     */
+    public static int toBookMove(int move) {
+        int from = Move.getFrom(move);
+        int to = Move.getTo(move);
+        if (Move.isCastling(move)) to = to > from ? from + 3 : from - 4;
+        int bookMove = toBookSquare(to) | toBookSquare(from) << 6;
+        PieceType promotion = Move.getPromotion(move);
+        if (promotion != null) {
+            for (int i = 1; i < PROMOTIONS.length; i++) {
+                if (PROMOTIONS[i] == promotion) bookMove |= i << 12;
+            }
+        }
+        return bookMove;
+    }
+
+    /**
+     * Returns the legal move of a position that a Polyglot move stands for.
+     */
+    private static int toMove(Board board, int bookMove) {
+        int from = fromBookSquare(bookMove >>> 6 & 63);
+        int to = fromBookSquare(bookMove & 63);
+        int promotion = bookMove >>> 12 & 7;
+        if (promotion >= PROMOTIONS.length) return Move.NONE;
+        boolean isKing = board.getPieceCodeAt(from) != Board.EMPTY &&
+                         Board.typeOfCode(board.getPieceCodeAt(from)) == PieceType.KING;
+        if (isKing && Math.abs(Board.getColumnAtSquare(to) - Board.getColumnAtSquare(from)) > 1) {
+            to = to > from ? from + 2 : from - 2;
+        }
+        if ((new MoveGenerator(board).getLegalTargets(from) & 1L << to) == 0) return Move.NONE;
+        return board.createMove(from, to, promotion == 0 ? PieceType.QUEEN : PROMOTIONS[promotion]);
+    }
+
+    private static int toBookSquare(int square) {
+        return (Board.getROWS() - 1 - Board.getRowAtSquare(square)) << 3 | Board.getColumnAtSquare(square);
+    }
+
+    private static int fromBookSquare(int bookSquare) {
+        return (Board.getROWS() - 1 - (bookSquare >>> 3)) * Board.getCOLUMNS() + (bookSquare & 7);
+    }
+
+    /**
+     * Returns the index of the first entry whose key is not below the given key, comparing keys as unsigned numbers as
+     * the book is sorted.
+     */
+    private long findFirst(long key) {
+        long low = 0;
+        long high = entryCount;
+        while (low < high) {
+            long middle = (low + high) >>> 1;
+            if (Long.compareUnsigned(getKey(middle), key) < 0) low = middle + 1;
+            else high = middle;
+        }
+        return low;
+    }
+
+    private long getKey(long index) {
+        return segment(index).getLong(offset(index) + KEY_OFFSET);
+    }
+
+    private int getBookMove(long index) {
+        return segment(index).getShort(offset(index) + MOVE_OFFSET) & 0xFFFF;
+    }
+
+    private int getWeight(long index) {
+        return segment(index).getShort(offset(index) + WEIGHT_OFFSET) & 0xFFFF;
+    }
+
+    private MappedByteBuffer segment(long index) {
+        return segments[(int) (index / ENTRIES_PER_SEGMENT)];
+    }
+
+    private static int offset(long index) {
+        return (int) (index % ENTRIES_PER_SEGMENT) * ENTRY_SIZE;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: OpeningBook <book.bin> [fen]");
+            System.exit(1);
+        }
+        Board board = new Board();
+        if (args.length > 1) FENConverter.loadPositionFromFEN(board, args[1]);
+        try (OpeningBook book = open(Path.of(args[0]))) {
+            System.out.printf("Entries: %d%n", book.getEntryCount());
+            long key = PolyglotKeys.compute(board);
+            for (long i = book.findFirst(key); i < book.entryCount && book.getKey(i) == key; i++) {
+                int move = toMove(board, book.getBookMove(i));
+                if (move != Move.NONE) System.out.printf("%-8s weight %d%n", SANConverter.toSAN(board, move), book.getWeight(i));
+            }
+
+            Random random = new Random(1);
+            long found = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < TIMED_PROBES; i++) {
+                long probeKey = (i & 1) == 0 ? random.nextLong() : key;
+                long index = book.findFirst(probeKey);
+                if (index < book.entryCount && book.getKey(index) == probeKey) found++;
+            }
+            double nanos = (System.nanoTime() - start) / (double) TIMED_PROBES;
+            System.out.printf("Probe: %.0f ns on average over %d probes, %d found%n", nanos, TIMED_PROBES, found);
+        }
+    }
+}
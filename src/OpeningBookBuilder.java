@@ -0,0 +1,252 @@
+package se.liu.marfr380;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Builds an {@link OpeningBook} file from the games of a PGN collection.
+ * <p>
+ * The build is a parallel map/reduce. In the map step, worker threads replay games and count, in tables of their own,
+ * how often every move was played in every position of the opening and how well it scored: two points for a win of the
+ * side that played it, one for a draw. Every thread keeps one table per range of the key space, so the counts are
+ * already sharded by range when the map step ends. In the reduce step, every range is merged from its shards of all
+ * threads, weighted and sorted in parallel, and the ranges are written one after the other, which gives a sorted file.
+ * A move's weight is its points, scaled down in positions where the points would not fit in 16 bits. Games without a
+ * result are left out.
+ * <p>
+ * Usage: {@code OpeningBookBuilder [--threads <n>] [--plies <n>] [--min-games <n>] <games.pgn> <book.bin>}.
+ */
+public class OpeningBookBuilder
+{
+    private final static int DEFAULT_MAX_PLIES = 24;
+    private final static int DEFAULT_MIN_GAMES = 1;
+    private final static int GAMES_IN_FLIGHT_PER_THREAD = 64;
+    private final static int MAX_WEIGHT = 0xFFFF;
+    private final static int PARTITIONS = 64;
+    private final static int POINTS = 0, GAMES = 1;
+
+    private final int maxPlies;
+    private final Queue<List<Map<BookKey, long[]>>> tables = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<List<Map<BookKey, long[]>>> localTables = ThreadLocal.withInitial(() -> {
+        List<Map<BookKey, long[]>> shards = new ArrayList<>(PARTITIONS);
+        for (int i = 0; i < PARTITIONS; i++) {
+            shards.add(new HashMap<>());
+        }
+        tables.add(shards);
+        return shards;
+    });
+    private final ThreadLocal<Board> boards = ThreadLocal.withInitial(Board::new);
+
+    /**
+     * A move played in a position.
+     */
+    private record BookKey(long key, int bookMove) {}
+
+    /**
+     * A move of the finished book.
+     */
+    private record BookEntry(long key, int bookMove, long points) {}
+
+    /**
+     * Creates a builder that takes the given number of moves from the start of every game.
+     *
+     * @param maxPlies The number of moves to take from every game.
+     */
+    public OpeningBookBuilder(int maxPlies) {
+        this.maxPlies = maxPlies;
+    }
+
+    /**
+     * Adds the opening moves of a game to the book. This may be called from many threads at once, but not while
+     * {@link #write} runs.
+     *
+     * @param game The game.
+     *
+     * @return The number of moves added.
+     *
+     * @throws IllegalArgumentException If the game has an illegal or malformed move or start position. The moves before
+     *                                  it are still added.
+     */
+    public int addGame(PGNGame game) {
+        int whitePoints = switch (game.result()) {
+            case "1-0" -> 2;
+            case "0-1" -> 0;
+            case "1/2-1/2" -> 1;
+            default -> -1;
+        };
+        if (whitePoints < 0) return 0;
+        Board board = boards.get();
+        String startFEN = game.getStartFEN();
+        if (startFEN == null) board.resetToStartPosition();
+        else FENConverter.loadPositionFromFEN(board, startFEN);
+
+        List<Map<BookKey, long[]>> shards = localTables.get();
+        int plies = Math.min(maxPlies, game.moves().size());
+        for (int i = 0; i < plies; i++) {
+            int move = SANConverter.parseMove(board, game.moves().get(i));
+            BookKey bookKey = new BookKey(PolyglotKeys.compute(board), OpeningBook.toBookMove(move));
+            long[] counts = shards.get(partitionOf(bookKey.key())).computeIfAbsent(bookKey, key -> new long[2]);
+            counts[POINTS] += board.isWhiteToMove() ? whitePoints : 2 - whitePoints;
+            counts[GAMES]++;
+            board.makeMove(move);
+        }
+        return plies;
+    }
+
+    /**
+     * Merges the counts of all threads and writes the book.
+     *
+     * @param path     The file to write.
+     * @param minGames The number of games a move must have been played in to be written.
+     * @param threads  The number of threads to merge with.
+     *
+     * @return The number of entries written.
+     *
+     * @throws IOException If writing fails.
+     */
+    public long write(Path path, int minGames, int threads) throws IOException {
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        List<Future<ByteBuffer>> ranges = new ArrayList<>();
+        for (int i = 0; i < PARTITIONS; i++) {
+            int partition = i;
+            ranges.add(workers.submit(() -> reduce(partition, minGames)));
+        }
+        long entries = 0;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (Future<ByteBuffer> range : ranges) {
+                ByteBuffer buffer = range.get();
+                entries += buffer.remaining() / OpeningBook.ENTRY_SIZE;
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing the book", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Merging the book failed", e.getCause());
+        } finally {
+            workers.shutdownNow();
+        }
+        return entries;
+    }
+
+    /**
+     * Merges the shards of one range of keys from the tables of all threads and encodes the range as sorted book
+     * entries. The ranges split the keys as unsigned numbers, so that writing them in order gives a sorted book.
+     */
+    private ByteBuffer reduce(int partition, int minGames) {
+        Map<BookKey, long[]> merged = new HashMap<>();
+        for (List<Map<BookKey, long[]>> shards : tables) {
+            for (Map.Entry<BookKey, long[]> entry : shards.get(partition).entrySet()) {
+                long[] counts = entry.getValue();
+                merged.merge(entry.getKey(), counts.clone(), (a, b) -> {
+                    a[POINTS] += b[POINTS];
+                    a[GAMES] += b[GAMES];
+                    return a;
+                });
+            }
+        }
+
+        List<BookEntry> entries = new ArrayList<>();
+        Map<Long, Long> maxPoints = new HashMap<>();
+        for (Map.Entry<BookKey, long[]> entry : merged.entrySet()) {
+            long[] counts = entry.getValue();
+            if (counts[GAMES] < minGames || counts[POINTS] == 0) continue;
+            long key = entry.getKey().key();
+            entries.add(new BookEntry(key, entry.getKey().bookMove(), counts[POINTS]));
+            maxPoints.merge(key, counts[POINTS], Math::max);
+        }
+        // Moves with equal points are ordered by move, so that the book does not depend on the number of threads
+        entries.sort((a, b) -> a.key() != b.key() ? Long.compareUnsigned(a.key(), b.key())
+                               : a.points() != b.points() ? Long.compare(b.points(), a.points())
+                               : Integer.compare(a.bookMove(), b.bookMove()));
+
+        ByteBuffer buffer = ByteBuffer.allocate(entries.size() * OpeningBook.ENTRY_SIZE);
+        for (BookEntry entry : entries) {
+            long max = maxPoints.get(entry.key());
+            long weight = max <= MAX_WEIGHT ? entry.points() : Math.max(1, entry.points() * MAX_WEIGHT / max);
+            buffer.putLong(entry.key());
+            buffer.putShort((short) entry.bookMove());
+            buffer.putShort((short) weight);
+            buffer.putInt(0);
+        }
+        return buffer.flip();
+    }
+
+    private static int partitionOf(long key) {
+        return (int) ((key >>> 32) * PARTITIONS >>> 32);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxPlies = DEFAULT_MAX_PLIES;
+        int minGames = DEFAULT_MIN_GAMES;
+        List<Path> paths = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--plies" -> maxPlies = Integer.parseInt(args[++i]);
+                case "--min-games" -> minGames = Integer.parseInt(args[++i]);
+                default -> paths.add(Path.of(args[i]));
+            }
+        }
+        if (paths.size() != 2) {
+            System.err.println("Usage: OpeningBookBuilder [--threads <n>] [--plies <n>] [--min-games <n>] " +
+                               "<games.pgn> <book.bin>");
+            System.exit(1);
+        }
+
+        OpeningBookBuilder builder = new OpeningBookBuilder(maxPlies);
+        LongAdder games = new LongAdder();
+        LongAdder plies = new LongAdder();
+        LongAdder failures = new LongAdder();
+        Semaphore inFlight = new Semaphore(threads * GAMES_IN_FLIGHT_PER_THREAD);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        long start = System.nanoTime();
+        try (PGNReader reader = PGNReader.open(paths.get(0))) {
+            for (PGNGame game = reader.next(); game != null; game = reader.next()) {
+                PGNGame current = game;
+                inFlight.acquire();
+                workers.execute(() -> {
+                    try {
+                        plies.add(builder.addGame(current));
+                        games.increment();
+                    } catch (IllegalArgumentException e) {
+                        failures.increment();
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+        long mapped = System.nanoTime();
+        long entries = builder.write(paths.get(1), minGames, threads);
+        long end = System.nanoTime();
+
+        System.out.printf("Games: %d read, %d failed%n", games.sum(), failures.sum());
+        System.out.printf("Moves: %d counted, %d entries written%n", plies.sum(), entries);
+        System.out.printf("Time: %.3f s counting, %.3f s merging and writing, with %d threads%n",
+                          (mapped - start) / 1.0e9, (end - mapped) / 1.0e9, threads);
+    }
+}
@@ -0,0 +1,24 @@
+package se.liu.marfr380;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One game read from a PGN file: its tag pairs, its main line in SAN and its result. Comments, variations and numeric
+ * annotation glyphs are not kept.
+ *
+ * @param tags   The tag pairs in the order they appeared, for example {@code Event} and {@code FEN}.
+ * @param moves  The moves of the main line in SAN.
+ * @param result The result token, {@code 1-0}, {@code 0-1}, {@code 1/2-1/2} or {@code *}.
+ */
+public record PGNGame(Map<String, String> tags, List<String> moves, String result)
+{
+    /**
+     * Returns the position the game starts from.
+     *
+     * @return The FEN of the {@code FEN} tag, or null if the game starts from the start position.
+     */
+    public String getStartFEN() {
+        return tags.get("FEN");
+    }
+}
@@ -0,0 +1,215 @@
+package se.liu.marfr380;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Reads the games of a PGN file one at a time, streaming it through a fixed buffer so that files of any size can be
+ * read without holding more than one game in memory.
+ * <p>
+ * The tokenizer works directly on the bytes. It keeps tag pairs and the moves of the main line, and skips comments in
+ * braces or after a semicolon, variations in parentheses (also nested ones), numeric annotation glyphs, move numbers and
+ * escape lines starting with {@code %}. A game ends at its result token, or where the tags of the next game start if
+ * the result is missing. Tag values are decoded as UTF-8.
+ */
+public class PGNReader implements Closeable
+{
+    private final static int BUFFER_SIZE = 1 << 20;
+    private final static int NO_BYTE = -2;
+
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    private final StringBuilder token = new StringBuilder();
+    private byte[] tagValue = new byte[256];
+    private int pushedBack = NO_BYTE;
+    private int previous = '\n';
+    private boolean atLineStart = true;
+    private long bytesRead = 0;
+
+    /**
+     * Creates a reader of the bytes of a channel. The reader closes the channel when it is closed.
+     *
+     * @param channel The channel to read from.
+     */
+    public PGNReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        buffer.flip();
+    }
+
+    /**
+     * Opens a reader of a PGN file.
+     *
+     * @param path The file.
+     *
+     * @return The reader.
+     *
+     * @throws IOException If the file cannot be opened.
+     */
+    public static PGNReader open(Path path) throws IOException {
+        return new PGNReader(FileChannel.open(path, StandardOpenOption.READ));
+    }
+
+    /**
+     * Returns the number of bytes read from the channel so far.
+     *
+     * @return The number of bytes.
+     */
+    public long getBytesRead() {
+        return bytesRead;
+    }
+
+    /**
+     * Reads the next game.
+     *
+     * @return The game, or null if there are no more games.
+     *
+     * @throws IOException If reading fails.
+     */
+    public PGNGame next() throws IOException {
+        Map<String, String> tags = new LinkedHashMap<>();
+        List<String> moves = new ArrayList<>();
+        boolean inMovetext = false;
+        for (int c = read(); c >= 0; c = read()) {
+            switch (c) {
+                case '[' -> {
+                    if (inMovetext) {
+                        pushedBack = c;
+                        return new PGNGame(tags, moves, "*");
+                    }
+                    readTag(tags);
+                }
+                case '{' -> skipPast('}');
+                case ';' -> skipPast('\n');
+                case '(' -> skipVariation();
+                case ' ', '\t', '\r', '\n', ')', ']' -> {}
+                default -> {
+                    if (c == '%' && atLineStart) {
+                        skipPast('\n');
+                        continue;
+                    }
+                    String move = readToken(c);
+                    if (isResult(move)) return new PGNGame(tags, moves, move);
+                    if (move.isEmpty()) continue;
+                    inMovetext = true;
+                    moves.add(move);
+                }
+            }
+        }
+        return tags.isEmpty() && moves.isEmpty() ? null : new PGNGame(tags, moves, "*");
+    }
+
+    @Override public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Reads a movetext token starting with the given byte and strips move numbers from it, so that both
+     * {@code 12. e4} and {@code 12.e4} give {@code e4}. Numeric annotation glyphs give an empty token.
+     */
+    private String readToken(int first) throws IOException {
+        token.setLength(0);
+        token.append((char) first);
+        for (int c = read(); c >= 0; c = read()) {
+            if (isTokenEnd(c)) {
+                pushedBack = c;
+                break;
+            }
+            token.append((char) c);
+        }
+        if (token.charAt(0) == '$') return "";
+        int start = 0;
+        if (Character.isDigit(token.charAt(0))) {
+            int dot = token.lastIndexOf(".");
+            if (dot >= 0) start = dot + 1;
+        }
+        return token.substring(start);
+    }
+
+    private void readTag(Map<String, String> tags) throws IOException {
+        token.setLength(0);
+        int c = read();
+        while (c == ' ' || c == '\t') {
+            c = read();
+        }
+        for (; c >= 0 && c != ' ' && c != '\t' && c != '"' && c != ']'; c = read()) {
+            token.append((char) c);
+        }
+        while (c >= 0 && c != '"' && c != ']') {
+            c = read();
+        }
+        int length = 0;
+        if (c == '"') {
+            for (c = read(); c >= 0 && c != '"'; c = read()) {
+                if (c == '\\') c = read();
+                if (length == tagValue.length) tagValue = Arrays.copyOf(tagValue, length * 2);
+                tagValue[length++] = (byte) c;
+            }
+            skipPast(']');
+        }
+        if (!token.isEmpty()) tags.put(token.toString(), new String(tagValue, 0, length, StandardCharsets.UTF_8));
+    }
+
+    private void skipVariation() throws IOException {
+        int depth = 1;
+        for (int c = read(); c >= 0 && depth > 0; c = read()) {
+            if (c == '(') depth++;
+            else if (c == ')') depth--;
+            else if (c == '{') skipPast('}');
+            else if (c == ';') skipPast('\n');
+        }
+    }
+
+    private void skipPast(int end) throws IOException {
+        for (int c = read(); c >= 0 && c != end; c = read()) {
+            // Skipped
+        }
+    }
+
+    /**
+     * Returns the next byte as a value from 0 to 255, or -1 at the end of the channel.
+     */
+    private int read() throws IOException {
+        int c;
+        if (pushedBack != NO_BYTE) {
+            c = pushedBack;
+            pushedBack = NO_BYTE;
+            return c;
+        }
+        if (!buffer.hasRemaining()) {
+            buffer.clear();
+            int count = channel.read(buffer);
+            while (count == 0) {
+                count = channel.read(buffer);
+            }
+            buffer.flip();
+            if (count < 0) return -1;
+            bytesRead += count;
+        }
+        c = buffer.get() & 0xFF;
+        atLineStart = previous == '\n';
+        previous = c;
+        return c;
+    }
+
+    private static boolean isTokenEnd(int c) {
+        return switch (c) {
+            case ' ', '\t', '\r', '\n', '{', '}', '(', ')', ';', '[', ']' -> true;
+            default -> false;
+        };
+    }
+
+    private static boolean isResult(String token) {
+        return token.equals("1-0") || token.equals("0-1") || token.equals("1/2-1/2") || token.equals("*");
+    }
+}
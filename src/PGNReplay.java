@@ -0,0 +1,143 @@
+package se.liu.marfr380;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Replays the games of a PGN file through the rules of {@link Board}, checking that every move is legal, and can write
+ * every position reached as FEN.
+ * <p>
+ * One thread reads the file with a {@link PGNReader} and hands each game to a pool of workers, which replay games
+ * independently on boards of their own. The reader blocks when too many games are waiting, so memory use stays bounded
+ * however large the file is. Games per second and the peak heap use are reported at the end.
+ * <p>
+ * Usage: {@code PGNReplay [--threads <n>] [--positions <file>] <file.pgn>}.
+ */
+public class PGNReplay
+{
+    private final static int GAMES_IN_FLIGHT_PER_THREAD = 64;
+    private final static int MAX_REPORTED_ERRORS = 10;
+
+    private final static ThreadLocal<Board> BOARDS = ThreadLocal.withInitial(Board::new);
+
+    private PGNReplay() {}
+
+    /**
+     * Plays the moves of a game on a board, starting from the start position or from the position in its {@code FEN}
+     * tag.
+     *
+     * @param game      The game.
+     * @param board     The board to play on. It is set up again first.
+     * @param positions Where to append the FEN of every position of the game, one per line, or null.
+     *
+     * @return The number of moves played.
+     *
+     * @throws IllegalArgumentException If a move is illegal or malformed, or the start position is malformed.
+     */
+    public static int replay(PGNGame game, Board board, StringBuilder positions) {
+        String startFEN = game.getStartFEN();
+        if (startFEN == null) board.resetToStartPosition();
+        else FENConverter.loadPositionFromFEN(board, startFEN);
+        if (positions != null) FENConverter.toFEN(board, positions).append('\n');
+        int plies = 0;
+        for (String san : game.moves()) {
+            int move;
+            try {
+                move = SANConverter.parseMove(board, san);
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException("Ply " + (plies + 1) + ": " + e.getMessage(), e);
+            }
+            board.makeMove(move);
+            plies++;
+            if (positions != null) FENConverter.toFEN(board, positions).append('\n');
+        }
+        return plies;
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path positionsPath = null;
+        Path pgnPath = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--positions" -> positionsPath = Path.of(args[++i]);
+                default -> pgnPath = Path.of(args[i]);
+            }
+        }
+        if (pgnPath == null) {
+            System.err.println("Usage: PGNReplay [--threads <n>] [--positions <file>] <file.pgn>");
+            System.exit(1);
+        }
+
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+        LongAdder games = new LongAdder();
+        LongAdder plies = new LongAdder();
+        LongAdder failures = new LongAdder();
+        AtomicLong gameNumber = new AtomicLong();
+        Semaphore inFlight = new Semaphore(threads * GAMES_IN_FLIGHT_PER_THREAD);
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        Writer positionWriter = positionsPath == null ? null : Files.newBufferedWriter(positionsPath, StandardCharsets.UTF_8);
+
+        long start = System.nanoTime();
+        long bytes;
+        try (PGNReader reader = PGNReader.open(pgnPath)) {
+            for (PGNGame game = reader.next(); game != null; game = reader.next()) {
+                long number = gameNumber.incrementAndGet();
+                PGNGame current = game;
+                inFlight.acquire();
+                workers.execute(() -> {
+                    try {
+                        StringBuilder positions = positionWriter == null ? null : new StringBuilder();
+                        plies.add(replay(current, BOARDS.get(), positions));
+                        if (positions != null) {
+                            synchronized (positionWriter) {
+                                positionWriter.append(positions);
+                            }
+                        }
+                        games.increment();
+                    } catch (IllegalArgumentException | IOException e) {
+                        failures.increment();
+                        if (failures.sum() <= MAX_REPORTED_ERRORS) {
+                            System.err.println("Game " + number + " " + current.tags().getOrDefault("Event", "") +
+                                               ": " + e.getMessage());
+                        }
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+            }
+            bytes = reader.getBytesRead();
+        } finally {
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+            if (positionWriter != null) positionWriter.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1.0e9;
+
+        long peakHeap = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) peakHeap += pool.getPeakUsage().getUsed();
+        }
+        System.out.printf("Games: %d replayed, %d failed%n", games.sum(), failures.sum());
+        System.out.printf("Moves: %d%n", plies.sum());
+        System.out.printf("Time: %.3f s with %d threads%n", seconds, threads);
+        System.out.printf("Games per second: %.0f%n", (games.sum() + failures.sum()) / Math.max(seconds, 1.0e-9));
+        System.out.printf("Throughput: %.1f MB/s%n", bytes / 1.0e6 / Math.max(seconds, 1.0e-9));
+        System.out.printf("Peak heap: %.1f MB%n", peakHeap / 1.0e6);
+    }
+}
@@ -1,46 +1,28 @@
 package se.liu.marfr380;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class Pawn extends AbstractPiece
 {
     public Pawn(final int boardPos, final PieceColor pieceColor) {
 	super(boardPos, PieceType.PAWN, pieceColor);
     }
-    public List<Integer> getPossibleMoves(final Board board) {
-	List<Integer> possibleMoves = new ArrayList<>();
-
+    @Override public void getPossibleMoves(final Board board, final MoveList moves) {
 	if (!isPlayersTurn(board.isWhiteToMove())) {
-	    return possibleMoves;
+	    return;
 	}
 
 	int direction = color == PieceColor.WHITE ? -1 : 1;
+	int startRow = color == PieceColor.WHITE ? Board.getROWS() - 2 : 1;
 	int nextMove = pos + (8 * direction);
 
-	if (nextMove >= 0 && nextMove <= 63 && board.getPieceAt(nextMove) == null) {
-	    possibleMoves.add(nextMove);
-	    if (!hasMoved && nextMove + (8 * direction) >= 0 && nextMove + (8 * direction) <= 63 &&
-		board.getPieceAt(nextMove + (8 * direction)) == null) {
-		possibleMoves.add(nextMove + (8 * direction));
-	    }
-	}
-
-	nextMove = pos + (7 * direction);
-	if (nextMove >= 0 && nextMove <= 63 && Math.abs(Board.getColumnAtSquare(pos) - Board.getColumnAtSquare(nextMove)) == 1) {
-	    if (board.getPieceAt(nextMove) != null && board.getPieceAt(nextMove).getColor() != color) {
-		possibleMoves.add(nextMove);
-	    }
-	}
-
-	nextMove = pos + (9 * direction);
-	if (nextMove >= 0 && nextMove <= 63 && Math.abs(Board.getColumnAtSquare(pos) - Board.getColumnAtSquare(nextMove)) == 1) {
-	    if (board.getPieceAt(nextMove) != null && board.getPieceAt(nextMove).getColor() != color) {
-		possibleMoves.add(nextMove);
+	if (nextMove >= 0 && nextMove <= 63 && !board.isOccupied(nextMove)) {
+	    board.addMoves(pos, 1L << nextMove, moves);
+	    if (Board.getRowAtSquare(pos) == startRow && nextMove + (8 * direction) >= 0 && nextMove + (8 * direction) <= 63 &&
+		!board.isOccupied(nextMove + (8 * direction))) {
+		board.addMoves(pos, 1L << (nextMove + (8 * direction)), moves);
 	    }
 	}
 
-	return possibleMoves;
+	board.addMoves(pos, Attacks.pawn(color, pos) & board.getPieces(getOpponentColor()), moves);
     }
 
 }
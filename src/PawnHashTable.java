@@ -0,0 +1,128 @@
+package se.liu.marfr380;
+
+import java.util.Arrays;
+
+/**
+ * A small fixed-size cache of pawn structure scores keyed by {@link Board#getPawnKey()}. The pawns change in few moves,
+ * so most positions a search reaches have a pawn structure it has already scored, and the pawn terms of
+ * {@link Evaluation} only need to be computed again after a pawn moves or is captured.
+ * <p>
+ * Unlike the {@link TranspositionTable}, a pawn table belongs to one thread: every {@link Search} has its own, so
+ * entries need no protection against torn writes. The table is a single {@code long[]} with three longs per entry: the
+ * pawn key, the structure score and the king shield scores, as computed by {@link Evaluation}. An entry is simply
+ * overwritten by the next structure with the same index.
+ * <p>
+ * The table counts its hits and misses, so that its hit rate can be reported.
+ */
+public class PawnHashTable
+{
+    /**
+     * The number of entries of a table created with the default size, 192 KiB.
+     */
+    public final static int DEFAULT_ENTRIES = 1 << 13;
+
+    private final static int LONGS_PER_ENTRY = 3;
+    private final static int KEY = 0, STRUCTURE = 1, SHIELDS = 2;
+
+    private final long[] table;
+    private final int indexMask;
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Creates a table with the default number of entries.
+     */
+    public PawnHashTable() {
+        this(DEFAULT_ENTRIES);
+    }
+
+    /**
+     * Creates a table with the given number of entries, rounded down to a power of two.
+     *
+     * @param entries The number of entries, at least 1.
+     */
+    public PawnHashTable(int entries) {
+        int size = Integer.highestOneBit(Math.max(1, entries));
+        this.table = new long[size * LONGS_PER_ENTRY];
+        this.indexMask = size - 1;
+        clear();
+    }
+
+    /**
+     * Removes all entries and resets the counters.
+     */
+    public void clear() {
+        Arrays.fill(table, 0L);
+        // Positions without pawns have the key 0, so empty entries get a key no real structure is expected to have.
+        for (int i = 0; i < table.length; i += LONGS_PER_ENTRY) {
+            table[i + KEY] = ~0L;
+        }
+        hits = 0;
+        misses = 0;
+    }
+
+    /**
+     * Looks up a pawn structure.
+     *
+     * @param pawnKey The pawn key of the position.
+     *
+     * @return The offset of the entry, to be read with {@link #getStructure(int)} and {@link #getShields(int)}, or -1
+     * if the structure is not in the table.
+     */
+    public int probe(long pawnKey) {
+        int offset = offsetOf(pawnKey);
+        if (table[offset + KEY] == pawnKey) {
+            hits++;
+            return offset;
+        }
+        misses++;
+        return -1;
+    }
+
+    /**
+     * Stores the scores of a pawn structure, replacing whatever the entry held.
+     *
+     * @param pawnKey   The pawn key of the position.
+     * @param structure The packed structure score, see {@link Evaluation}.
+     * @param shields   The packed king shield scores, see {@link Evaluation}.
+     *
+     * @return The offset of the entry.
+     */
+    public int store(long pawnKey, long structure, long shields) {
+        int offset = offsetOf(pawnKey);
+        table[offset + KEY] = pawnKey;
+        table[offset + STRUCTURE] = structure;
+        table[offset + SHIELDS] = shields;
+        return offset;
+    }
+
+    public long getStructure(int offset) {
+        return table[offset + STRUCTURE];
+    }
+
+    public long getShields(int offset) {
+        return table[offset + SHIELDS];
+    }
+
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns the share of lookups that found their structure in the table.
+     *
+     * @return The hit rate between 0 and 1, or 0 before the first lookup.
+     */
+    public double getHitRate() {
+        long probes = hits + misses;
+        return probes == 0 ? 0.0 : (double) hits / probes;
+    }
+
+    private int offsetOf(long pawnKey) {
+        return ((int) (pawnKey >>> 32) & indexMask) * LONGS_PER_ENTRY;
+    }
+}
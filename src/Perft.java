@@ -0,0 +1,221 @@
+package se.liu.marfr380;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the leaf nodes of the move tree from a position to a fixed depth ("perft"), using the same legal move
+ * generation as the game. The counts can be compared with published reference values to verify move generation, and the node
+ * rate is reported so that the speed of move generation can be measured.
+ * <p>
+ * Usage: {@code Perft [--divide] [--parallel] [--fen <fen>] <depth>} or {@code Perft --suite [maxDepth]}.
+ */
+public class Perft
+{
+
+    /**
+     * Standard reference positions with their known node counts, starting at depth 1.
+     */
+    private final static List<Reference> REFERENCES = List.of(
+            new Reference("Start position", Board.START_FEN, 20, 400, 8902, 197281, 4865609),
+            new Reference("Kiwipete", "r3k2r/p1ppqpb1/bn2pnp1/3PN3/1p2P3/2N2Q1p/PPPBBPPP/R3K2R w KQkq - 0 1",
+                          48, 2039, 97862, 4085603),
+            new Reference("En passant and pins", "8/2p5/3p4/KP5r/1R3p1k/8/4P1P1/8 w - - 0 1",
+                          14, 191, 2812, 43238, 674624),
+            new Reference("Castling and promotion", "r3k2r/Pppp1ppp/1b3nbN/nP6/BBP1P3/q4N2/Pp1P2PP/R2Q1RK1 w kq - 0 1",
+                          6, 264, 9467, 422333),
+            new Reference("Promotion with check", "rnbq1k1r/pp1Pbppp/2p5/8/2B5/8/PPP1NnPP/RNBQK2R w KQ - 1 8",
+                          44, 1486, 62379, 2103487),
+            new Reference("Symmetric middlegame",
+                          "r4rk1/1pp1qppp/p1np1n2/2b1p1B1/2B1P1b1/P1NP1N2/1PP1QPPP/R4RK1 w - - 0 10",
+                          46, 2079, 89890, 3894594));
+
+    private Perft() {}
+
+    /**
+     * Counts the leaf nodes of the move tree from the position on the board.
+     *
+     * @param board The position to count from. It is restored before the method returns.
+     * @param depth The number of plies to search.
+     *
+     * @return The number of leaf nodes at the given depth.
+     */
+    public static long perft(Board board, int depth) {
+        MoveList[] moveLists = new MoveList[Math.max(depth, 0) + 1];
+        for (int i = 0; i < moveLists.length; i++) {
+            moveLists[i] = new MoveList();
+        }
+        return perft(board, depth, moveLists);
+    }
+
+    /**
+     * Counts the leaf nodes, reusing one move list per remaining depth.
+     */
+    private static long perft(Board board, int depth, MoveList[] moveLists) {
+        if (depth == 0) return 1;
+        MoveList moves = moveLists[depth];
+        moves.clear();
+        new MoveGenerator(board).generateLegalMoves(moves);
+        if (depth == 1) return moves.size();
+        long nodes = 0;
+        for (int i = 0; i < moves.size(); i++) {
+            board.makeMove(moves.get(i));
+            nodes += perft(board, depth - 1, moveLists);
+            board.unmakeMove();
+        }
+        return nodes;
+    }
+
+    /**
+     * Counts the leaf nodes below every legal move of the position separately.
+     *
+     * @param board    The position to count from. It is restored before the method returns.
+     * @param depth    The number of plies to search, including the root move.
+     * @param parallel Whether the root moves should be split across the common fork-join pool.
+     *
+     * @return The root moves together with the number of leaf nodes below each of them.
+     *
+     * @throws IllegalArgumentException If the depth is below 1, since there are no root moves to divide by.
+     */
+    public static List<DivideResult> divide(Board board, int depth, boolean parallel) {
+        if (depth < 1) throw new IllegalArgumentException("Divide depth must be at least 1, was " + depth);
+        List<RootMoveTask> tasks = new ArrayList<>();
+        MoveList moves = new MoveList();
+        new MoveGenerator(board).generateLegalMoves(moves);
+        for (int i = 0; i < moves.size(); i++) {
+            tasks.add(new RootMoveTask(board, moves.get(i), depth - 1));
+        }
+        if (parallel) {
+            tasks.forEach(ForkJoinPool.commonPool()::execute);
+        } else {
+            tasks.forEach(RootMoveTask::invoke);
+        }
+        List<DivideResult> results = new ArrayList<>();
+        for (RootMoveTask task : tasks) {
+            results.add(new DivideResult(task.move, task.join()));
+        }
+        return results;
+    }
+
+    public static void main(String[] args) {
+        boolean divide = false;
+        boolean parallel = false;
+        boolean suite = false;
+        String fen = Board.START_FEN;
+        int depth = -1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--divide" -> divide = true;
+                case "--parallel" -> parallel = true;
+                case "--suite" -> suite = true;
+                case "--fen" -> fen = args[++i];
+                default -> depth = Integer.parseInt(args[i]);
+            }
+        }
+        if (suite && depth < 0) depth = 4;
+        if (depth < 1) {
+            System.err.println("Usage: Perft [--divide] [--parallel] [--fen <fen>] <depth> | Perft --suite [maxDepth]");
+            System.err.println("The depth must be at least 1.");
+            System.exit(1);
+        }
+        if (suite) {
+            runSuite(depth, parallel);
+            return;
+        }
+
+        Board board = boardFromFEN(fen);
+        long start = System.nanoTime();
+        long nodes;
+        if (divide || parallel) {
+            nodes = 0;
+            for (DivideResult result : divide(board, depth, parallel)) {
+                if (divide) System.out.println(Move.toString(result.move()) + ": " + result.nodes());
+                nodes += result.nodes();
+            }
+        } else {
+            nodes = perft(board, depth);
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println();
+        System.out.println("Nodes: " + nodes);
+        printSpeed(nodes, elapsed);
+    }
+
+    /**
+     * Runs all reference positions up to the given depth and reports mismatching node counts.
+     *
+     * @param maxDepth The deepest depth to run.
+     * @param parallel Whether root moves should be split across the fork-join pool.
+     */
+    private static void runSuite(int maxDepth, boolean parallel) {
+        int failures = 0;
+        long totalNodes = 0;
+        long totalTime = 0;
+        for (Reference reference : REFERENCES) {
+            for (int depth = 1; depth <= Math.min(maxDepth, reference.nodes().length); depth++) {
+                Board board = boardFromFEN(reference.fen());
+                long start = System.nanoTime();
+                long nodes = 0;
+                for (DivideResult result : divide(board, depth, parallel)) {
+                    nodes += result.nodes();
+                }
+                long elapsed = System.nanoTime() - start;
+                long expected = reference.nodes()[depth - 1];
+                boolean ok = nodes == expected;
+                if (!ok) failures++;
+                totalNodes += nodes;
+                totalTime += elapsed;
+                System.out.printf("%-24s depth %d: %12d %s%n", reference.name(), depth, nodes,
+                                  ok ? "ok" : "FAIL (expected " + expected + ")");
+            }
+        }
+        System.out.println();
+        printSpeed(totalNodes, totalTime);
+        System.out.println(failures == 0 ? "All reference counts match." : failures + " reference counts differ.");
+    }
+
+    private static Board boardFromFEN(String fen) {
+        Board board = new Board();
+        FENConverter.loadPositionFromFEN(board, fen);
+        return board;
+    }
+
+    private static void printSpeed(long nodes, long elapsedNanos) {
+        double seconds = elapsedNanos / 1.0e9;
+        System.out.printf("Time: %.3f s%n", seconds);
+        System.out.printf("Nodes per second: %.0f%n", nodes / Math.max(seconds, 1.0e-9));
+    }
+
+    /**
+     * The number of leaf nodes below one root move.
+     *
+     * @param move  The encoded root move.
+     * @param nodes The number of leaf nodes below it.
+     */
+    public record DivideResult(int move, long nodes) {}
+
+    private record Reference(String name, String fen, long... nodes) {}
+
+    /**
+     * Counts the nodes below one root move on a private copy of the board, so that root moves can run in parallel.
+     */
+    private static class RootMoveTask extends RecursiveTask<Long>
+    {
+        private final Board board;
+        private final int move;
+        private final int depth;
+
+        private RootMoveTask(Board board, int move, int depth) {
+            this.board = new Board(board);
+            this.move = move;
+            this.depth = depth;
+        }
+
+        @Override protected Long compute() {
+            board.makeMove(move);
+            return perft(board, depth);
+        }
+    }
+}
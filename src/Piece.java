@@ -1,6 +1,5 @@
 package se.liu.marfr380;
 
-import java.awt.*;
 import java.util.List;
 
 public interface Piece
@@ -11,11 +10,12 @@ public interface Piece
     PieceType getType();
     PieceColor getColor();
     List<Integer> getPossibleMoves(Board board);
+    void getPossibleMoves(Board board, MoveList moves);
     List<Integer> findAllMoves(Board board);
+    void findAllMoves(Board board, MoveList moves);
 
     boolean hasMoved();
 
 
     boolean isLegalMove(final int square,Board board);
-    Image getImage();
 }
@@ -1,24 +1,14 @@
 package se.liu.marfr380;
 
-import java.util.ArrayList;
-import java.util.List;
-
 public class Queen extends AbstractPiece
 {
     public Queen(final int boardPos, final PieceColor pieceColor){
 	super(boardPos, PieceType.QUEEN, pieceColor);
     }
 
-    @Override public List<Integer> getPossibleMoves(final Board board) {
-	List<Integer> possibleMoves = new ArrayList<>();
-	if (!isPlayersTurn(board.isWhiteToMove()))return possibleMoves;
-	List<Integer> rookMoves = new Rook(pos,color).getPossibleMoves(board);
-	List<Integer> bishopMoves = new Bishop(pos,color).getPossibleMoves(board);
-
-	possibleMoves.addAll(rookMoves);
-	possibleMoves.addAll(bishopMoves);
-	return possibleMoves;
+    @Override public void getPossibleMoves(final Board board, final MoveList moves) {
+	if (!isPlayersTurn(board.isWhiteToMove()))return;
+	board.addMoves(pos, Attacks.queen(pos, board.getOccupied()) & ~board.getPieces(color), moves);
     }
 
-
 }
@@ -0,0 +1,176 @@
+package se.liu.marfr380;
+
+/**
+ * Reads and writes moves in Standard Algebraic Notation (SAN), such as {@code Nbd7}, {@code exd6}, {@code e8=Q+} or
+ * {@code O-O}. Moves are read by matching them against the legal moves of a position.
+ * <p>
+ * The reader is lenient in the ways PGN files in the wild need: check and annotation marks are ignored, castling may be
+ * written with zeros, the {@code =} before a promotion piece may be missing and a move may name its source square in
+ * full, as in {@code Ng1f3} or {@code e2-e4}.
+ */
+public class SANConverter
+{
+    private final static String PIECE_LETTERS = "RNBQK";
+
+    private SANConverter() {}
+
+    /**
+     * Finds the legal move a SAN string stands for. Only the pieces of the named type are asked for their legal
+     * targets, so reading a move costs much less than generating all moves of the position.
+     *
+     * @param board The position the move is played in.
+     * @param san   The move in SAN.
+     *
+     * @return The encoded move, see {@link Move}.
+     *
+     * @throws IllegalArgumentException If the move is malformed, illegal or ambiguous in the position.
+     */
+    public static int parseMove(Board board, CharSequence san) {
+        int end = san.length();
+        while (end > 0 && "+#!?".indexOf(san.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        if (end < 2) throw invalid(san, "malformed");
+        PieceColor us = board.isWhiteToMove() ? PieceColor.WHITE : PieceColor.BLACK;
+        MoveGenerator generator = new MoveGenerator(board);
+
+        if (isCastling(san, end)) {
+            int king = board.getKingPos(us);
+            int to = end == 3 ? king + 2 : king - 2;
+            if (board.getPieces(PieceType.KING, us) == 0 || (generator.getLegalTargets(king) & 1L << to) == 0) {
+                throw invalid(san, "illegal");
+            }
+            return board.createMove(king, to, null);
+        }
+
+        int start = 0;
+        PieceType type = PieceType.PAWN;
+        int letter = PIECE_LETTERS.indexOf(san.charAt(0));
+        if (letter >= 0) {
+            type = PieceType.values()[letter];
+            start = 1;
+        }
+
+        PieceType promotion = null;
+        PieceType lastLetter = Move.promotionFromLetter(san.charAt(end - 1));
+        if (type == PieceType.PAWN && lastLetter != null && Character.isUpperCase(san.charAt(end - 1))) {
+            promotion = lastLetter;
+            end--;
+            if (san.charAt(end - 1) == '=') end--;
+        }
+        if (end - start < 2) throw invalid(san, "malformed");
+        int toColumn = san.charAt(end - 2) - 'a';
+        int toRank = san.charAt(end - 1) - '0';
+        if (!isColumn(toColumn) || !isRank(toRank)) throw invalid(san, "malformed");
+        int to = squareOf(toColumn, toRank);
+
+        int fromColumn = -1;
+        int fromRank = -1;
+        for (int i = start; i < end - 2; i++) {
+            char c = san.charAt(i);
+            if (isColumn(c - 'a')) fromColumn = c - 'a';
+            else if (isRank(c - '0')) fromRank = c - '0';
+            else if (c != 'x' && c != '-' && c != ':') throw invalid(san, "malformed");
+        }
+
+        int found = Board.NO_SQUARE;
+        for (long pieces = board.getPieces(type, us); pieces != 0; pieces &= pieces - 1) {
+            int from = Long.numberOfTrailingZeros(pieces);
+            if (fromColumn >= 0 && Board.getColumnAtSquare(from) != fromColumn) continue;
+            if (fromRank >= 0 && Board.getROWS() - Board.getRowAtSquare(from) != fromRank) continue;
+            if ((generator.getLegalTargets(from) & 1L << to) == 0) continue;
+            if (found != Board.NO_SQUARE) throw invalid(san, "ambiguous");
+            found = from;
+        }
+        if (found == Board.NO_SQUARE) throw invalid(san, "illegal");
+        int move = board.createMove(found, to, promotion == null ? PieceType.QUEEN : promotion);
+        if (promotion != null && !Move.isPromotion(move)) throw invalid(san, "malformed");
+        return move;
+    }
+
+    /**
+     * Writes a legal move in SAN, with a file or rank only where another piece of the same type could also reach the
+     * target square, and with a check or mate mark.
+     *
+     * @param board The position the move is played in. It is restored before the method returns.
+     * @param move  The encoded move.
+     *
+     * @return The move in SAN.
+     */
+    public static String toSAN(Board board, int move) {
+        StringBuilder builder = new StringBuilder(8);
+        int from = Move.getFrom(move);
+        int to = Move.getTo(move);
+        PieceType type = Board.typeOfCode(Move.getPiece(move));
+        if (Move.isCastling(move)) {
+            builder.append(to > from ? "O-O" : "O-O-O");
+        } else {
+            if (type == PieceType.PAWN) {
+                if (Move.isCapture(move)) builder.append(Move.squareToString(from).charAt(0));
+            } else {
+                builder.append(PIECE_LETTERS.charAt(type.ordinal()));
+                appendDisambiguation(board, move, builder);
+            }
+            if (Move.isCapture(move)) builder.append('x');
+            builder.append(Move.squareToString(to));
+            PieceType promotion = Move.getPromotion(move);
+            if (promotion != null) builder.append('=').append(PIECE_LETTERS.charAt(promotion.ordinal()));
+        }
+
+        board.makeMove(move);
+        MoveGenerator generator = new MoveGenerator(board);
+        if (generator.isInCheck()) builder.append(generator.hasLegalMove() ? '+' : '#');
+        board.unmakeMove();
+        return builder.toString();
+    }
+
+    private static void appendDisambiguation(Board board, int move, StringBuilder builder) {
+        int from = Move.getFrom(move);
+        MoveList moves = new MoveList();
+        new MoveGenerator(board).generateLegalMoves(moves);
+        boolean ambiguous = false;
+        boolean sameColumn = false;
+        boolean sameRow = false;
+        for (int i = 0; i < moves.size(); i++) {
+            int other = moves.get(i);
+            int otherFrom = Move.getFrom(other);
+            if (otherFrom == from || Move.getTo(other) != Move.getTo(move) || Move.getPiece(other) != Move.getPiece(move)) {
+                continue;
+            }
+            ambiguous = true;
+            if (Board.getColumnAtSquare(otherFrom) == Board.getColumnAtSquare(from)) sameColumn = true;
+            if (Board.getRowAtSquare(otherFrom) == Board.getRowAtSquare(from)) sameRow = true;
+        }
+        if (!ambiguous) return;
+        String square = Move.squareToString(from);
+        if (!sameColumn) builder.append(square.charAt(0));
+        else if (!sameRow) builder.append(square.charAt(1));
+        else builder.append(square);
+    }
+
+    private static boolean isCastling(CharSequence san, int end) {
+        if (end != 3 && end != 5) return false;
+        for (int i = 0; i < end; i++) {
+            char c = san.charAt(i);
+            boolean ok = i % 2 == 0 ? c == 'O' || c == '0' : c == '-';
+            if (!ok) return false;
+        }
+        return true;
+    }
+
+    private static boolean isColumn(int column) {
+        return column >= 0 && column < Board.getCOLUMNS();
+    }
+
+    private static boolean isRank(int rank) {
+        return rank >= 1 && rank <= Board.getROWS();
+    }
+
+    private static int squareOf(int column, int rank) {
+        return (Board.getROWS() - rank) * Board.getCOLUMNS() + column;
+    }
+
+    private static IllegalArgumentException invalid(CharSequence san, String reason) {
+        return new IllegalArgumentException("Move " + san + " is " + reason);
+    }
+}
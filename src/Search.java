@@ -0,0 +1,394 @@
+package se.liu.marfr380;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Finds the best move in a position with a principal variation search: a negamax alpha-beta search where every move
+ * after the first is searched with a null window and only searched again with the full window if it turns out better.
+ * The search deepens iteratively, one ply at a time, and uses a {@link TranspositionTable} both to cut off positions it
+ * has already searched and to try the best move of the previous iteration first. The moves of every node come from a
+ * {@link MovePicker}, which generates them in stages as they are needed and orders quiet moves by the killers, history
+ * and counter moves in a {@link MoveHistory} that the search updates at every cutoff.
+ * <p>
+ * Below the root, a position that repeats an earlier one, in the game or in the line searched, and a position where
+ * the fifty-move rule applies are scored as draws without searching them.
+ * <p>
+ * At the leaves a quiescence search plays out captures until the position is quiet, so that a leaf is never scored in
+ * the middle of an exchange. The side to move may stand pat on the static evaluation instead of capturing, captures
+ * that cannot raise the score to alpha even with a margin are skipped (delta pruning), and captures that lose material
+ * by {@link StaticExchange} are never tried. A side in check must answer it with any legal move.
+ * <p>
+ * The search runs on a private copy of the board. It ends when a limit in {@link SearchLimits} is reached or when
+ * {@link #stop()} is called from another thread, and returns the result of the last completed iteration.
+ * <p>
+ * A search with a thread index above 0 is a helper for {@link LazySMPSearch}. Helpers with an odd index search one ply
+ * deeper than asked, and all helpers break ties between quiet moves in their own random order, so that they fill the
+ * shared table with different parts of the tree. Only the main search, index 0, starts a new table generation and
+ * reports iterations to the listener.
+ * <p>
+ * Usage: {@code Search [--fen <fen>] [--time <millis>] [--nodes <nodes>] [depth]}.
+ */
+public class Search
+{
+    /**
+     * The deepest iteration and the most plies from the root any line can reach.
+     */
+    public final static int MAX_DEPTH = 64;
+    /**
+     * Score of being mated right now. Being mated in {@code n} plies scores {@code -MATE_SCORE + n}.
+     */
+    public final static int MATE_SCORE = 30000;
+
+    private final static int INFINITY = 32000;
+    private final static int LIMIT_CHECK_INTERVAL = 1024;
+    private final static int DELTA_MARGIN = 200;
+    private final static int DRAW_SCORE = 0;
+    private final static int FIFTY_MOVE_PLIES = 100;
+
+    private final TranspositionTable table;
+    private final int threadIndex;
+    private final MoveHistory moveHistory = new MoveHistory();
+    private final MovePicker[] pickers;
+    private final int[] playedMoves = new int[MAX_DEPTH + 1];
+    private final MoveList rootMoves = new MoveList();
+    private final int[][] principalVariations = new int[MAX_DEPTH + 1][MAX_DEPTH + 1];
+    private final int[] principalVariationLengths = new int[MAX_DEPTH + 1];
+    private final PawnHashTable pawnTable = new PawnHashTable();
+
+    private volatile boolean stopped = false;
+    private Consumer<SearchResult> iterationListener = null;
+    private Tablebases tablebases = null;
+    private Board board = null;
+    private SearchLimits limits = null;
+    private long startTime;
+    private long nodes;
+    private long cutoffs;
+    private long firstMoveCutoffs;
+
+    /**
+     * Creates a search that stores its results in the given table.
+     *
+     * @param table The transposition table to use.
+     */
+    public Search(TranspositionTable table) {
+        this(table, 0);
+    }
+
+    /**
+     * Creates a search that shares the given table with other threads.
+     *
+     * @param table       The transposition table to use.
+     * @param threadIndex The index of the thread the search runs on, 0 for the main search.
+     */
+    public Search(TranspositionTable table, int threadIndex) {
+        this.table = table;
+        this.threadIndex = threadIndex;
+        this.pickers = new MovePicker[MAX_DEPTH + 1];
+        for (int ply = 0; ply < pickers.length; ply++) {
+            pickers[ply] = new MovePicker(moveHistory, threadIndex * 0x9E3779B97F4A7C15L);
+        }
+    }
+
+    /**
+     * Sets a listener that is told the result of every completed iteration.
+     *
+     * @param iterationListener The listener, or null for none.
+     */
+    public void setIterationListener(final Consumer<SearchResult> iterationListener) {
+        this.iterationListener = iterationListener;
+    }
+
+    /**
+     * Sets the endgame tables to look up positions in. Positions found in a table below the root are scored from the
+     * table instead of being searched.
+     *
+     * @param tablebases The tables, or null for none.
+     */
+    public void setTablebases(final Tablebases tablebases) {
+        this.tablebases = tablebases;
+    }
+
+    /**
+     * Stops a running search as soon as possible. The search then returns the result of its last completed iteration.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Returns the number of nodes searched so far by the current or last search.
+     *
+     * @return The node count.
+     */
+    public long getNodes() {
+        return nodes;
+    }
+
+    /**
+     * Returns the number of nodes of the current or last search that were cut off because a move scored at least beta.
+     *
+     * @return The number of cutoffs.
+     */
+    public long getCutoffs() {
+        return cutoffs;
+    }
+
+    /**
+     * Returns the share of the cutoffs of the current or last search that the first move tried caused, a measure of how
+     * well moves are ordered.
+     *
+     * @return The first-move cutoff rate between 0 and 1, or 0 if there were no cutoffs.
+     */
+    public double getFirstMoveCutoffRate() {
+        return cutoffs == 0 ? 0.0 : (double) firstMoveCutoffs / cutoffs;
+    }
+
+    /**
+     * Returns the pawn structure cache of this search, whose counters cover every search it has run.
+     *
+     * @return The pawn table.
+     */
+    public PawnHashTable getPawnHashTable() {
+        return pawnTable;
+    }
+
+    /**
+     * Checks if a score means that one side can force mate.
+     *
+     * @param score The score.
+     *
+     * @return True if the score is a mate score.
+     */
+    public static boolean isMateScore(int score) {
+        return Math.abs(score) > MATE_SCORE - MAX_DEPTH - 1;
+    }
+
+    /**
+     * Searches for the best move of the side to move.
+     *
+     * @param position The position to search. It is copied and never modified.
+     * @param limits   When to stop searching.
+     *
+     * @return The best move with its score and principal variation. The best move is {@link Move#NONE} if the side to
+     * move has no legal moves.
+     */
+    public SearchResult search(Board position, SearchLimits limits) {
+        this.board = new Board(position);
+        this.limits = limits;
+        this.startTime = System.currentTimeMillis();
+        this.nodes = 0;
+        this.stopped = false;
+        if (threadIndex == 0) table.newSearch();
+
+        this.cutoffs = 0;
+        this.firstMoveCutoffs = 0;
+        moveHistory.newSearch();
+        rootMoves.clear();
+        new MoveGenerator(board).generateLegalMoves(rootMoves);
+        int count = rootMoves.size();
+        SearchResult result = new SearchResult(count > 0 ? rootMoves.get(0) : Move.NONE, 0,
+                                               count > 0 ? new int[] { rootMoves.get(0) } : new int[0], 0, 0, 0);
+        int extraDepth = threadIndex % 2;
+        for (int depth = 1; depth <= limits.getMaxDepth() && count > 0; depth++) {
+            int score = searchNode(Math.min(depth + extraDepth, MAX_DEPTH), -INFINITY, INFINITY, 0);
+            if (stopped) break;
+            int[] line = Arrays.copyOf(principalVariations[0], principalVariationLengths[0]);
+            result = new SearchResult(line[0], score, line, depth, nodes, System.currentTimeMillis() - startTime);
+            if (iterationListener != null && threadIndex == 0) iterationListener.accept(result);
+            if (isMateScore(score) && MATE_SCORE - Math.abs(score) <= depth) break;
+            if (limits.getMaxTimeMillis() != SearchLimits.UNLIMITED &&
+                result.getTimeMillis() * 2 > limits.getMaxTimeMillis()) break;
+        }
+        return new SearchResult(result.getBestMove(), result.getScore(), result.getPrincipalVariation(),
+                                result.getDepth(), nodes, System.currentTimeMillis() - startTime);
+    }
+
+    private int searchNode(int depth, int alpha, int beta, int ply) {
+        principalVariationLengths[ply] = ply;
+        if ((++nodes & (LIMIT_CHECK_INTERVAL - 1)) == 0) checkLimits();
+        if (stopped) return 0;
+        // A position seen before in the game or the line is scored as a draw, since either side can repeat it. The
+        // score depends on the path, so it never goes into the table.
+        if (ply > 0 && (board.getHalfmoveClock() >= FIFTY_MOVE_PLIES || board.isRepetition(2))) return DRAW_SCORE;
+
+        PieceColor us = board.isWhiteToMove() ? PieceColor.WHITE : PieceColor.BLACK;
+        boolean inCheck = board.isInCheck(us);
+        if (inCheck) depth++;
+        if (tablebases != null && ply > 0 && Long.bitCount(board.getOccupied()) <= tablebases.getMaxPieces()) {
+            int value = tablebases.probe(board);
+            if (value != Tablebase.NOT_FOUND) return Tablebase.toScore(value, ply);
+        }
+        if (ply >= MAX_DEPTH) return Evaluation.evaluate(board, pawnTable);
+        if (depth <= 0) return quiescence(alpha, beta, ply);
+
+        boolean pvNode = beta - alpha > 1;
+        long key = board.getZobristKey();
+        long entry = table.probe(key);
+        int hashMove = Move.NONE;
+        if (entry != 0) {
+            hashMove = TranspositionTable.getMove(entry);
+            if (!pvNode && TranspositionTable.getDepth(entry) >= depth) {
+                int score = scoreFromTable(TranspositionTable.getScore(entry), ply);
+                int bound = TranspositionTable.getBound(entry);
+                if (bound == TranspositionTable.BOUND_EXACT ||
+                    (bound == TranspositionTable.BOUND_LOWER && score >= beta) ||
+                    (bound == TranspositionTable.BOUND_UPPER && score <= alpha)) return score;
+            }
+        }
+
+        MovePicker picker = pickers[ply];
+        int previousMove = ply > 0 ? playedMoves[ply - 1] : Move.NONE;
+        picker.reset(board, hashMove, ply, previousMove);
+
+        int originalAlpha = alpha;
+        int bestScore = -INFINITY;
+        int bestMove = Move.NONE;
+        int moveCount = 0;
+        for (int move = picker.next(); move != Move.NONE; move = picker.next()) {
+            playedMoves[ply] = move;
+            board.makeMove(move);
+            int score;
+            if (moveCount++ == 0) {
+                score = -searchNode(depth - 1, -beta, -alpha, ply + 1);
+            } else {
+                score = -searchNode(depth - 1, -alpha - 1, -alpha, ply + 1);
+                if (score > alpha && score < beta) score = -searchNode(depth - 1, -beta, -alpha, ply + 1);
+            }
+            board.unmakeMove();
+            if (stopped) return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                bestMove = move;
+                if (score > alpha) {
+                    alpha = score;
+                    updatePrincipalVariation(ply, move);
+                    if (alpha >= beta) {
+                        cutoffs++;
+                        if (moveCount == 1) firstMoveCutoffs++;
+                        if (MovePicker.isQuiet(move)) moveHistory.addCutoff(move, previousMove, ply, depth);
+                        break;
+                    }
+                }
+            }
+        }
+        if (moveCount == 0) return inCheck ? -MATE_SCORE + ply : 0;
+
+        int bound;
+        if (bestScore >= beta) bound = TranspositionTable.BOUND_LOWER;
+        else if (bestScore > originalAlpha) bound = TranspositionTable.BOUND_EXACT;
+        else bound = TranspositionTable.BOUND_UPPER;
+        table.store(key, bestMove, scoreToTable(bestScore, ply), depth, bound);
+        return bestScore;
+    }
+
+    /**
+     * Searches captures and promotions only, until the position is quiet. The principal variation ends before the
+     * moves of the quiescence search.
+     */
+    private int quiescence(int alpha, int beta, int ply) {
+        principalVariationLengths[ply] = ply;
+        if ((++nodes & (LIMIT_CHECK_INTERVAL - 1)) == 0) checkLimits();
+        if (stopped) return 0;
+        if (ply >= MAX_DEPTH) return Evaluation.evaluate(board, pawnTable);
+
+        PieceColor us = board.isWhiteToMove() ? PieceColor.WHITE : PieceColor.BLACK;
+        boolean inCheck = board.isInCheck(us);
+        MovePicker picker = pickers[ply];
+        int standPat = 0;
+        int bestScore = -INFINITY;
+        if (inCheck) {
+            picker.reset(board, Move.NONE, ply, playedMoves[ply - 1]);
+        } else {
+            standPat = Evaluation.evaluate(board, pawnTable);
+            if (standPat >= beta) return standPat;
+            if (standPat > alpha) alpha = standPat;
+            bestScore = standPat;
+            picker.resetCaptures(board);
+        }
+
+        int moveCount = 0;
+        for (int move = picker.next(); move != Move.NONE; move = picker.next()) {
+            moveCount++;
+            if (!inCheck && !Move.isPromotion(move) &&
+                standPat + Evaluation.pieceValue(Board.typeOfCode(Move.getCaptured(move))) + DELTA_MARGIN <= alpha) {
+                continue;
+            }
+            playedMoves[ply] = move;
+            board.makeMove(move);
+            int score = -quiescence(-beta, -alpha, ply + 1);
+            board.unmakeMove();
+            if (stopped) return 0;
+
+            if (score > bestScore) {
+                bestScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    if (alpha >= beta) break;
+                }
+            }
+        }
+        if (inCheck && moveCount == 0) return -MATE_SCORE + ply;
+        return bestScore;
+    }
+
+    private void updatePrincipalVariation(int ply, int move) {
+        int[] line = principalVariations[ply];
+        line[ply] = move;
+        int childLength = principalVariationLengths[ply + 1];
+        for (int i = ply + 1; i < childLength; i++) {
+            line[i] = principalVariations[ply + 1][i];
+        }
+        principalVariationLengths[ply] = Math.max(childLength, ply + 1);
+    }
+
+    private void checkLimits() {
+        if (nodes >= limits.getMaxNodes()) stopped = true;
+        if (limits.getMaxTimeMillis() != SearchLimits.UNLIMITED &&
+            System.currentTimeMillis() - startTime >= limits.getMaxTimeMillis()) stopped = true;
+    }
+
+    /**
+     * Converts a mate score relative to the root into one relative to the current node before storing it, so that
+     * it stays correct when the position is reached at another ply.
+     */
+    private static int scoreToTable(int score, int ply) {
+        if (score > MATE_SCORE - MAX_DEPTH - 1) return score + ply;
+        if (score < -MATE_SCORE + MAX_DEPTH + 1) return score - ply;
+        return score;
+    }
+
+    private static int scoreFromTable(int score, int ply) {
+        if (score > MATE_SCORE - MAX_DEPTH - 1) return score - ply;
+        if (score < -MATE_SCORE + MAX_DEPTH + 1) return score + ply;
+        return score;
+    }
+
+    public static void main(String[] args) {
+        String fen = Board.START_FEN;
+        int depth = MAX_DEPTH;
+        long time = SearchLimits.UNLIMITED;
+        long maxNodes = SearchLimits.UNLIMITED;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--fen" -> fen = args[++i];
+                case "--time" -> time = Long.parseLong(args[++i]);
+                case "--nodes" -> maxNodes = Long.parseLong(args[++i]);
+                default -> depth = Integer.parseInt(args[i]);
+            }
+        }
+        if (depth == MAX_DEPTH && time == SearchLimits.UNLIMITED && maxNodes == SearchLimits.UNLIMITED) depth = 6;
+
+        Board board = new Board();
+        FENConverter.loadPositionFromFEN(board, fen);
+        Search search = new Search(new TranspositionTable(64));
+        search.setIterationListener(System.out::println);
+        SearchResult result = search.search(board, new SearchLimits(depth, time, maxNodes));
+        System.out.printf("cutoffs %d first move %.1f%%%n", search.getCutoffs(), search.getFirstMoveCutoffRate() * 100);
+        PawnHashTable pawns = search.getPawnHashTable();
+        System.out.printf("pawn hash %d hits %d misses %.1f%% hit rate%n", pawns.getHits(), pawns.getMisses(),
+                          pawns.getHitRate() * 100);
+        System.out.println("bestmove " + (result.getBestMove() == Move.NONE ? "(none)" : Move.toString(result.getBestMove())));
+    }
+}
@@ -0,0 +1,75 @@
+package se.liu.marfr380;
+
+/**
+ * The limits a search stops at. A search ends as soon as any of its limits is reached, or when it is stopped from
+ * another thread.
+ */
+public class SearchLimits
+{
+    /**
+     * Value meaning that a limit is not used.
+     */
+    public final static long UNLIMITED = Long.MAX_VALUE;
+
+    private final int maxDepth;
+    private final long maxTimeMillis;
+    private final long maxNodes;
+
+    /**
+     * Creates search limits.
+     *
+     * @param maxDepth      The deepest iteration to search, in plies.
+     * @param maxTimeMillis The longest time to search, in milliseconds, or {@link #UNLIMITED}.
+     * @param maxNodes      The most nodes to search, or {@link #UNLIMITED}.
+     */
+    public SearchLimits(int maxDepth, long maxTimeMillis, long maxNodes) {
+        this.maxDepth = maxDepth;
+        this.maxTimeMillis = maxTimeMillis;
+        this.maxNodes = maxNodes;
+    }
+
+    /**
+     * Creates limits that only bound the depth.
+     *
+     * @param depth The deepest iteration to search, in plies.
+     *
+     * @return The limits.
+     */
+    public static SearchLimits depth(int depth) {
+        return new SearchLimits(depth, UNLIMITED, UNLIMITED);
+    }
+
+    /**
+     * Creates limits that only bound the time.
+     *
+     * @param millis The longest time to search, in milliseconds.
+     *
+     * @return The limits.
+     */
+    public static SearchLimits time(long millis) {
+        return new SearchLimits(Search.MAX_DEPTH, millis, UNLIMITED);
+    }
+
+    /**
+     * Creates limits that only bound the number of nodes.
+     *
+     * @param nodes The most nodes to search.
+     *
+     * @return The limits.
+     */
+    public static SearchLimits nodes(long nodes) {
+        return new SearchLimits(Search.MAX_DEPTH, UNLIMITED, nodes);
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public long getMaxTimeMillis() {
+        return maxTimeMillis;
+    }
+
+    public long getMaxNodes() {
+        return maxNodes;
+    }
+}
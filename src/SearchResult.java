@@ -0,0 +1,77 @@
+package se.liu.marfr380;
+
+/**
+ * The outcome of a search, or of one completed iteration of it.
+ */
+public class SearchResult
+{
+    private final int bestMove;
+    private final int score;
+    private final int[] principalVariation;
+    private final int depth;
+    private final long nodes;
+    private final long timeMillis;
+
+    /**
+     * Creates a search result.
+     *
+     * @param bestMove           The best move, encoded as described in {@link Move}, or {@link Move#NONE}.
+     * @param score              The score in centipawns from the side to move's point of view, see
+     *                           {@link Search#isMateScore(int)}.
+     * @param principalVariation The expected line of play, starting with the best move.
+     * @param depth              The depth of the last completed iteration.
+     * @param nodes              The number of nodes searched.
+     * @param timeMillis         The time spent searching, in milliseconds.
+     */
+    public SearchResult(int bestMove, int score, int[] principalVariation, int depth, long nodes, long timeMillis) {
+        this.bestMove = bestMove;
+        this.score = score;
+        this.principalVariation = principalVariation;
+        this.depth = depth;
+        this.nodes = nodes;
+        this.timeMillis = timeMillis;
+    }
+
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int[] getPrincipalVariation() {
+        return principalVariation.clone();
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    /**
+     * Returns the search speed.
+     *
+     * @return The number of nodes searched per second.
+     */
+    public long getNodesPerSecond() {
+        return nodes * 1000 / Math.max(1, timeMillis);
+    }
+
+    @Override public String toString() {
+        StringBuilder pv = new StringBuilder();
+        for (int move : principalVariation) {
+            if (pv.length() > 0) pv.append(' ');
+            pv.append(Move.toString(move));
+        }
+        return "depth " + depth + " score " + score + " nodes " + nodes + " time " + timeMillis + " nps " +
+               getNodesPerSecond() + " pv " + pv;
+    }
+}
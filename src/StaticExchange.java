@@ -0,0 +1,96 @@
+package se.liu.marfr380;
+
+/**
+ * Static exchange evaluation: the material a move wins or loses once both sides have made every capture on its
+ * target square that pays for them, always recapturing with their least valuable attacker. The exchange is resolved
+ * from the attack information of the {@link Board} alone, without making any moves. Removing a capturing piece from
+ * the occupancy reveals the sliders behind it, so batteries and x-ray attacks are counted.
+ * <p>
+ * Pins and checks are ignored, apart from the king never capturing onto a square the other side still attacks, and a
+ * pawn recapturing on the last row is counted as a pawn. The evaluation allocates nothing, so the search can use it in
+ * every node both for ordering captures and for pruning the ones that lose material.
+ */
+public final class StaticExchange
+{
+    private final static PieceType[] ATTACKER_ORDER = {
+            PieceType.PAWN, PieceType.KNIGHT, PieceType.BISHOP, PieceType.ROOK, PieceType.QUEEN, PieceType.KING
+    };
+    private final static int KING_VALUE = 20000;
+
+    private StaticExchange() {}
+
+    /**
+     * Returns the material the side to move wins with a move if the exchange it starts is played out.
+     *
+     * @param board The board, in the position the move is played from.
+     * @param move  The encoded move. It need not be a capture.
+     *
+     * @return The material balance of the exchange in centipawns, negative if the move loses material.
+     */
+    public static int evaluate(Board board, int move) {
+        int from = Move.getFrom(move);
+        int to = Move.getTo(move);
+        int code = Move.getPiece(move);
+        PieceColor mover = Board.colorOfCode(code);
+
+        int gain = Move.isCapture(move) ? Evaluation.pieceValue(Board.typeOfCode(Move.getCaptured(move))) : 0;
+        int pieceValue = valueOf(Board.typeOfCode(code));
+        PieceType promotion = Move.getPromotion(move);
+        if (promotion != null) {
+            gain += Evaluation.pieceValue(promotion) - Evaluation.pieceValue(PieceType.PAWN);
+            pieceValue = Evaluation.pieceValue(promotion);
+        }
+
+        long occupancy = board.getOccupied() & ~(1L << from);
+        if (Move.isEnPassant(move)) occupancy &= ~(1L << ((from & ~7) | (to & 7)));
+        return gain - exchange(board, to, occupancy, opposite(mover), pieceValue);
+    }
+
+    /**
+     * Checks if a move wins at least a given amount of material in the exchange it starts.
+     *
+     * @param board     The board, in the position the move is played from.
+     * @param move      The encoded move.
+     * @param threshold The least material balance to accept, in centipawns.
+     *
+     * @return True if the exchange wins at least the threshold.
+     */
+    public static boolean isAtLeast(Board board, int move, int threshold) {
+        return evaluate(board, move) >= threshold;
+    }
+
+    /**
+     * Returns what a side gains by capturing on a square, where it may also stand pat and capture nothing.
+     *
+     * @param board       The board.
+     * @param square      The square exchanged on.
+     * @param occupancy   The squares still occupied: the pieces that have captured so far have left their squares.
+     * @param side        The side to capture.
+     * @param targetValue The value of the piece standing on the square.
+     *
+     * @return The gain of the side to capture, at least 0.
+     */
+    private static int exchange(Board board, int square, long occupancy, PieceColor side, int targetValue) {
+        long attackers = board.getAttackers(square, side, occupancy) & occupancy;
+        if (attackers == 0) return 0;
+        for (PieceType type : ATTACKER_ORDER) {
+            long pieces = attackers & board.getPieces(type, side);
+            if (pieces == 0) continue;
+            long remaining = occupancy & ~Long.lowestOneBit(pieces);
+            if (type == PieceType.KING) {
+                long defenders = board.getAttackers(square, opposite(side), remaining) & remaining;
+                return defenders == 0 ? targetValue : 0;
+            }
+            return Math.max(0, targetValue - exchange(board, square, remaining, opposite(side), valueOf(type)));
+        }
+        return 0;
+    }
+
+    private static int valueOf(PieceType type) {
+        return type == PieceType.KING ? KING_VALUE : Evaluation.pieceValue(type);
+    }
+
+    private static PieceColor opposite(PieceColor color) {
+        return color == PieceColor.WHITE ? PieceColor.BLACK : PieceColor.WHITE;
+    }
+}
@@ -0,0 +1,364 @@
+package se.liu.marfr380;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An endgame tablebase for one material balance, such as KQK or KBNK, giving the exact outcome and distance to mate of
+ * every position with that material. Tables are written by {@link TablebaseGenerator} and are usually probed through
+ * {@link Tablebases}.
+ * <p>
+ * A material balance is named by the pieces of the stronger side, starting with its king, followed by the pieces of
+ * the other side, for example {@code KQKR}. Positions where the other side has the stronger pieces are probed with the
+ * colors swapped and the board mirrored. A position's index is the side to move followed by the square of every piece,
+ * in the order of the name, as digits of base 64. Castling and en passant are not part of a position, so endings with
+ * pawns on both sides are not supported.
+ * <p>
+ * Every position is stored as a value of a fixed number of bits, packed without gaps: 0 for a draw, or the distance to
+ * mate in plies plus one. An odd distance is a win for the side to move and an even one a loss, so that a probe is one
+ * read at a computed bit offset. The file has a 16 byte header followed by the packed values, and is memory-mapped for
+ * probing.
+ */
+public class Tablebase
+{
+    /**
+     * Value of a draw, and of positions that cannot occur.
+     */
+    public final static int DRAW = 0;
+    /**
+     * Value returned for positions whose material does not match the table.
+     */
+    public final static int NOT_FOUND = -1;
+    /**
+     * The most pieces, kings included, a table can have.
+     */
+    public final static int MAX_PIECES = 4;
+    /**
+     * The name ending of table files.
+     */
+    public final static String FILE_SUFFIX = ".tb";
+
+    private final static int MAGIC = 0x4354_4231;
+    private final static int HEADER_SIZE = 16;
+    private final static int PADDING = Long.BYTES;
+    private final static int SQUARES = 64;
+    private final static int FLIP_VERTICAL = 56;
+    private final static String PIECE_ORDER = "QRBNP";
+    private final static String PIECE_LETTERS = "RNBQKP";
+    private final static PieceType[] ORDER_TYPES =
+            { PieceType.QUEEN, PieceType.ROOK, PieceType.BISHOP, PieceType.KNIGHT, PieceType.PAWN };
+
+    private final String material;
+    private final int[] pieceCodes;
+    private final int materialKey;
+    private final int bitsPerValue;
+    private final long valueMask;
+    private final ByteBuffer data;
+
+    private Tablebase(String material, int bitsPerValue, ByteBuffer data) {
+        this.material = material;
+        this.pieceCodes = getPieceCodes(material);
+        this.materialKey = getMaterialKey(pieceCodes);
+        this.bitsPerValue = bitsPerValue;
+        this.valueMask = (1L << bitsPerValue) - 1;
+        this.data = data.order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    /**
+     * Opens and memory-maps a table file.
+     *
+     * @param path The file.
+     *
+     * @return The table.
+     *
+     * @throws IOException If the file cannot be read or is not a table.
+     */
+    public static Tablebase open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).order(ByteOrder.LITTLE_ENDIAN);
+            if (data.remaining() < HEADER_SIZE || data.getInt(0) != MAGIC) throw new IOException("Not a tablebase: " + path);
+            int pieceCount = data.get(4);
+            StringBuilder material = new StringBuilder();
+            for (int i = 0; i < pieceCount; i++) {
+                material.append(PIECE_LETTERS.charAt(Board.typeOfCode(data.get(5 + i)).ordinal()));
+            }
+            return new Tablebase(material.toString(), data.get(5 + MAX_PIECES), data);
+        }
+    }
+
+    /**
+     * Creates a table from values computed in memory.
+     *
+     * @param material The material balance.
+     * @param values   The value of every index.
+     *
+     * @return The table, backed by a heap buffer in the file layout.
+     */
+    static Tablebase fromValues(String material, int[] values) {
+        int max = 0;
+        for (int value : values) {
+            max = Math.max(max, value);
+        }
+        int bits = Math.max(1, Integer.SIZE - Integer.numberOfLeadingZeros(max));
+        long dataBytes = ((long) values.length * bits + Byte.SIZE - 1) / Byte.SIZE;
+        ByteBuffer buffer = ByteBuffer.allocate((int) (HEADER_SIZE + dataBytes + PADDING)).order(ByteOrder.LITTLE_ENDIAN);
+        int[] codes = getPieceCodes(material);
+        buffer.putInt(0, MAGIC);
+        buffer.put(4, (byte) codes.length);
+        for (int i = 0; i < codes.length; i++) {
+            buffer.put(5 + i, (byte) codes[i]);
+        }
+        buffer.put(5 + MAX_PIECES, (byte) bits);
+
+        long word = 0;
+        int wordBits = 0;
+        int position = HEADER_SIZE;
+        for (int value : values) {
+            word |= (long) value << wordBits;
+            wordBits += bits;
+            if (wordBits >= Integer.SIZE) {
+                buffer.putInt(position, (int) word);
+                position += Integer.BYTES;
+                word >>>= Integer.SIZE;
+                wordBits -= Integer.SIZE;
+            }
+        }
+        for (; wordBits > 0; wordBits -= Byte.SIZE) {
+            buffer.put(position++, (byte) word);
+            word >>>= Byte.SIZE;
+        }
+        return new Tablebase(material, bits, buffer);
+    }
+
+    /**
+     * Writes the table to a file.
+     *
+     * @param path The file.
+     *
+     * @throws IOException If writing fails.
+     */
+    public void write(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = data.duplicate().position(0).limit(data.capacity());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        }
+    }
+
+    public String getMaterial() {
+        return material;
+    }
+
+    /**
+     * Returns the size of the table in the file layout.
+     *
+     * @return The size in bytes.
+     */
+    public long getSizeInBytes() {
+        return data.capacity();
+    }
+
+    /**
+     * Returns the value of a position.
+     *
+     * @param board The position.
+     *
+     * @return The value, see {@link #isWin(int)}, {@link #isLoss(int)} and {@link #getDistanceToMate(int)}, or
+     * {@link #NOT_FOUND} if the position does not have the material of the table or has castling rights.
+     */
+    public int probe(Board board) {
+        if (Long.bitCount(board.getOccupied()) != pieceCodes.length || board.getCastlingRights() != 0) return NOT_FOUND;
+        boolean flipped = getMaterialKey(board, false) != materialKey;
+        if (flipped && getMaterialKey(board, true) != materialKey) return NOT_FOUND;
+        return getValue(getIndex(board, pieceCodes, flipped));
+    }
+
+    /**
+     * Returns the value at an index.
+     *
+     * @param index The index.
+     *
+     * @return The value.
+     */
+    int getValue(long index) {
+        long bit = index * bitsPerValue;
+        return (int) (data.getLong(HEADER_SIZE + (int) (bit >>> 3)) >>> (bit & 7) & valueMask);
+    }
+
+    /**
+     * Checks if a value is a win for the side to move.
+     *
+     * @param value The value.
+     *
+     * @return True for a win.
+     */
+    public static boolean isWin(int value) {
+        return value > 0 && (value & 1) == 0;
+    }
+
+    /**
+     * Checks if a value is a loss for the side to move.
+     *
+     * @param value The value.
+     *
+     * @return True for a loss, including being mated.
+     */
+    public static boolean isLoss(int value) {
+        return value > 0 && (value & 1) == 1;
+    }
+
+    /**
+     * Returns the distance to mate of a won or lost position.
+     *
+     * @param value The value.
+     *
+     * @return The number of plies until mate with best play.
+     */
+    public static int getDistanceToMate(int value) {
+        return value - 1;
+    }
+
+    /**
+     * Converts a value into a search score as seen from the side to move, with mates scored as in {@link Search}. Mates
+     * further from the root than {@link Search#MAX_DEPTH} plies score just below the mate scores instead, still better
+     * the shorter they are.
+     *
+     * @param value The value.
+     * @param ply   The distance of the position from the root of the search.
+     *
+     * @return The score.
+     */
+    public static int toScore(int value, int ply) {
+        if (value == DRAW) return 0;
+        int distance = ply + getDistanceToMate(value);
+        int score = distance <= Search.MAX_DEPTH ? Search.MATE_SCORE - distance
+                                                 : Search.MATE_SCORE - Search.MAX_DEPTH - 1 - distance;
+        return isWin(value) ? score : -score;
+    }
+
+    /**
+     * Returns a number that identifies the material of a position with up to three pieces of each kind and color, with
+     * the colors in the given order. Kings are not counted.
+     *
+     * @param board   The position.
+     * @param flipped False to count white's pieces as the first side, true to count black's.
+     *
+     * @return The material key.
+     */
+    static int getMaterialKey(Board board, boolean flipped) {
+        PieceColor first = flipped ? PieceColor.BLACK : PieceColor.WHITE;
+        PieceColor second = flipped ? PieceColor.WHITE : PieceColor.BLACK;
+        int key = 0;
+        for (PieceType type : ORDER_TYPES) {
+            key = key << 4 | (Long.bitCount(board.getPieces(type, first)) & 3) << 2 |
+                  Long.bitCount(board.getPieces(type, second)) & 3;
+        }
+        return key;
+    }
+
+    private static int getMaterialKey(int[] pieceCodes) {
+        int key = 0;
+        for (PieceType type : ORDER_TYPES) {
+            int first = 0;
+            int second = 0;
+            for (int code : pieceCodes) {
+                if (Board.typeOfCode(code) != type) continue;
+                if (Board.colorOfCode(code) == PieceColor.WHITE) first++;
+                else second++;
+            }
+            key = key << 4 | first << 2 | second;
+        }
+        return key;
+    }
+
+    /**
+     * Returns the name a material balance has in tables, which starts with the stronger side. Sides are compared by
+     * their number of pieces and then by their pieces from the strongest.
+     *
+     * @param material The name of a material balance, starting with either side.
+     *
+     * @return The name starting with the stronger side.
+     */
+    static String canonicalMaterial(String material) {
+        int split = material.indexOf('K', 1);
+        String first = material.substring(0, split);
+        String second = material.substring(split);
+        return compareSides(first, second) >= 0 ? material : second + first;
+    }
+
+    /**
+     * Returns the piece codes of a material balance in index order: white's pieces starting with its king, then black's.
+     *
+     * @param material The name of the material balance.
+     *
+     * @return The piece codes.
+     *
+     * @throws IllegalArgumentException If the name is malformed or has too many pieces.
+     */
+    static int[] getPieceCodes(String material) {
+        if (material.length() > MAX_PIECES || material.length() < 2 || material.charAt(0) != 'K' ||
+            material.indexOf('K', 1) < 0 || material.indexOf('K', material.indexOf('K', 1) + 1) >= 0) {
+            throw new IllegalArgumentException("Malformed material or more than " + MAX_PIECES + " pieces: " + material);
+        }
+        int split = material.indexOf('K', 1);
+        int[] codes = new int[material.length()];
+        for (int i = 0; i < codes.length; i++) {
+            char letter = material.charAt(i);
+            PieceType type = letter == 'K' ? PieceType.KING : null;
+            int order = PIECE_ORDER.indexOf(letter);
+            if (order >= 0) type = ORDER_TYPES[order];
+            if (type == null) throw new IllegalArgumentException("Unknown piece " + letter + " in " + material);
+            codes[i] = Board.toPieceCode(type, i < split ? PieceColor.WHITE : PieceColor.BLACK);
+        }
+        boolean whitePawns = material.substring(0, split).indexOf('P') >= 0;
+        boolean blackPawns = material.substring(split).indexOf('P') >= 0;
+        if (whitePawns && blackPawns) throw new IllegalArgumentException("Pawns on both sides are not supported: " + material);
+        return codes;
+    }
+
+    /**
+     * Returns the number of indices of a table with the given number of pieces.
+     *
+     * @param pieceCount The number of pieces.
+     *
+     * @return The number of indices.
+     */
+    static long getIndexCount(int pieceCount) {
+        return 2L << 6 * pieceCount;
+    }
+
+    /**
+     * Returns the index of a position in a table with the given pieces. Pieces of the same kind are taken in square
+     * order.
+     */
+    static long getIndex(Board board, int[] pieceCodes, boolean flipped) {
+        boolean whiteToMove = board.isWhiteToMove() != flipped;
+        long index = whiteToMove ? 0 : 1;
+        long used = 0L;
+        for (int code : pieceCodes) {
+            PieceType type = Board.typeOfCode(code);
+            PieceColor color = Board.colorOfCode(code);
+            if (flipped) color = color == PieceColor.WHITE ? PieceColor.BLACK : PieceColor.WHITE;
+            long pieces = board.getPieces(type, color) & ~used;
+            int square = Long.numberOfTrailingZeros(pieces);
+            used |= 1L << square;
+            index = index * SQUARES + (flipped ? square ^ FLIP_VERTICAL : square);
+        }
+        return index;
+    }
+
+    private static int compareSides(String first, String second) {
+        if (first.length() != second.length()) return Integer.compare(first.length(), second.length());
+        for (int i = 1; i < first.length(); i++) {
+            int difference = PIECE_ORDER.indexOf(second.charAt(i)) - PIECE_ORDER.indexOf(first.charAt(i));
+            if (difference != 0) return difference;
+        }
+        return 0;
+    }
+}
@@ -0,0 +1,496 @@
+package se.liu.marfr380;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Generates endgame tables by retrograde analysis, using the move rules of {@link Board} and {@link MoveGenerator}.
+ * <p>
+ * A first pass goes through every index of the table in parallel. It marks impossible positions, finds the mates and
+ * stalemates, counts the moves of every position that stay within the table, and looks up the moves that capture or
+ * promote in the smaller tables they lead to. Then positions are solved outward from the mates, one distance at a time:
+ * the positions found at one distance are taken back one move, in parallel, to find the positions before them. Such a
+ * position is won if it has a move to a lost position, and lost once all its moves have been found to lead to won
+ * positions. Positions that are never solved are draws.
+ * <p>
+ * Every position has one {@code int} during generation, holding its state, its count of unsolved moves and its
+ * distance, updated with compare-and-set since several threads can reach the same position.
+ * <p>
+ * Usage: {@code TablebaseGenerator [--threads <n>] [--directory <dir>] [material ...]} generates the tables of the
+ * given endings, KQK, KRK, KPK and KBNK by default, together with the smaller tables they need, and reports the time and
+ * file size of every table. Tables already in the directory are not generated again.
+ */
+public class TablebaseGenerator implements AutoCloseable
+{
+    private final static String[] DEFAULT_ENDINGS = { "KQK", "KRK", "KPK", "KBNK" };
+    private final static String DEFAULT_DIRECTORY = "tablebases";
+    private final static String PIECE_ORDER = "QRBNP";
+    private final static String PROMOTION_LETTERS = "QRBN";
+    private final static int SQUARES = 64;
+    private final static int CHUNK_SIZE = 1 << 14;
+
+    private final static int DISTANCE_MASK = 0xFFFF;
+    private final static int REMAINING_SHIFT = 16;
+    private final static int REMAINING_ONE = 1 << REMAINING_SHIFT;
+    private final static int REMAINING_MASK = 0xFF;
+    private final static int SOLVED = 1 << 24;
+    private final static int INVALID = 1 << 25;
+    private final static int HAS_DRAW = 1 << 26;
+    private final static int HAS_WIN = 1 << 27;
+    private final static int WIN = 1 << 28;
+    private final static VarHandle ENTRIES = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final Tablebases tablebases;
+    private final int threads;
+    private final ExecutorService workers;
+
+    /**
+     * A growable list of table indices.
+     */
+    private final static class IndexList
+    {
+        private int[] indices = new int[16];
+        private int size = 0;
+
+        private void add(int index) {
+            if (size == indices.length) indices = Arrays.copyOf(indices, size * 2);
+            indices[size++] = index;
+        }
+
+        private void addAll(IndexList other) {
+            for (int i = 0; i < other.size; i++) {
+                add(other.indices[i]);
+            }
+        }
+    }
+
+    /**
+     * The state of one table being generated.
+     */
+    private final static class Generation
+    {
+        private final String material;
+        private final int[] pieceCodes;
+        private final int[] entries;
+        private final List<IndexList> pending = new ArrayList<>();
+
+        private Generation(String material) {
+            this.material = material;
+            this.pieceCodes = Tablebase.getPieceCodes(material);
+            this.entries = new int[(int) Tablebase.getIndexCount(pieceCodes.length)];
+        }
+
+        /**
+         * Remembers a position to be solved at a later distance, when the result of one of its moves that leave the
+         * table decides it.
+         */
+        private synchronized void addPending(int distance, int index) {
+            while (pending.size() <= distance) {
+                pending.add(new IndexList());
+            }
+            pending.get(distance).add(index);
+        }
+
+        private synchronized IndexList takePending(int distance) {
+            if (distance >= pending.size()) return new IndexList();
+            IndexList list = pending.get(distance);
+            pending.set(distance, new IndexList());
+            return list;
+        }
+
+        private synchronized boolean hasPendingAfter(int distance) {
+            for (int i = distance + 1; i < pending.size(); i++) {
+                if (pending.get(i).size > 0) return true;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * Creates a generator that looks up and adds tables in the given collection.
+     *
+     * @param tablebases The tables available, to which every generated table is added.
+     * @param threads    The number of threads to generate with.
+     */
+    public TablebaseGenerator(Tablebases tablebases, int threads) {
+        this.tablebases = tablebases;
+        this.threads = threads;
+        this.workers = Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * Returns the name of a material balance as used for tables: the pieces of every side from the strongest, and the
+     * stronger side first.
+     *
+     * @param material The name of a material balance, such as {@code KNBK}.
+     *
+     * @return The name of its table, such as {@code KBNK}.
+     */
+    public static String normalizeMaterial(String material) {
+        String upper = material.toUpperCase();
+        int split = upper.indexOf('K', 1);
+        if (!upper.startsWith("K") || split < 0) throw new IllegalArgumentException("Malformed material: " + material);
+        String name = "K" + sortPieces(upper.substring(1, split)) + "K" + sortPieces(upper.substring(split + 1));
+        return Tablebase.canonicalMaterial(name);
+    }
+
+    /**
+     * Returns the tables needed to generate a table, smallest first and ending with the table itself.
+     *
+     * @param material The name of the table.
+     *
+     * @return The names of the tables.
+     */
+    public static List<String> getRequiredMaterials(String material) {
+        Set<String> required = new LinkedHashSet<>();
+        addRequired(normalizeMaterial(material), required);
+        return new ArrayList<>(required);
+    }
+
+    /**
+     * Generates a table. The tables its captures and promotions lead to must already be available.
+     *
+     * @param material The name of the table.
+     *
+     * @return The table, which is also added to the collection.
+     *
+     * @throws IllegalStateException If a table it needs is missing.
+     */
+    public Tablebase generate(String material) {
+        String name = normalizeMaterial(material);
+        for (String required : getRequiredMaterials(name)) {
+            if (!required.equals(name) && tablebases.get(required) == null) {
+                throw new IllegalStateException("Table " + required + " is needed to generate " + name);
+            }
+        }
+        Generation generation = new Generation(name);
+        IndexList frontier = scan(generation);
+        for (int distance = 1; frontier.size > 0 || generation.hasPendingAfter(distance - 1); distance++) {
+            IndexList next = retract(generation, frontier, distance);
+            IndexList pending = generation.takePending(distance);
+            int[] entries = generation.entries;
+            for (int i = 0; i < pending.size; i++) {
+                int index = pending.indices[i];
+                int entry = entries[index];
+                if ((entry & SOLVED) != 0) continue;
+                entries[index] = (entry & HAS_WIN) != 0 ? SOLVED | WIN | distance : SOLVED | distance;
+                next.add(index);
+            }
+            frontier = next;
+        }
+
+        int[] values = generation.entries;
+        for (int i = 0; i < values.length; i++) {
+            int entry = values[i];
+            values[i] = (entry & SOLVED) != 0 ? (entry & DISTANCE_MASK) + 1 : Tablebase.DRAW;
+        }
+        Tablebase table = Tablebase.fromValues(name, values);
+        tablebases.add(table);
+        return table;
+    }
+
+    @Override public void close() {
+        workers.shutdownNow();
+    }
+
+    /**
+     * Goes through every index of a table and returns the mates.
+     */
+    private IndexList scan(Generation generation) {
+        int size = generation.entries.length;
+        List<Future<IndexList>> chunks = new ArrayList<>();
+        for (int start = 0; start < size; start += CHUNK_SIZE) {
+            int from = start;
+            int to = Math.min(size, start + CHUNK_SIZE);
+            chunks.add(workers.submit(() -> scan(generation, from, to)));
+        }
+        IndexList mates = new IndexList();
+        for (IndexList chunk : await(chunks)) {
+            mates.addAll(chunk);
+        }
+        return mates;
+    }
+
+    private IndexList scan(Generation generation, int from, int to) {
+        int[] codes = generation.pieceCodes;
+        int[] entries = generation.entries;
+        Board board = new Board();
+        MoveList moves = new MoveList();
+        IndexList mates = new IndexList();
+        for (int index = from; index < to; index++) {
+            int stm = index >>> 6 * codes.length;
+            long occupied = 0L;
+            boolean valid = true;
+            board.emptyBoard();
+            for (int i = 0; i < codes.length && valid; i++) {
+                int square = squareOf(index, i, codes.length);
+                boolean pawnOnLastRow = Board.typeOfCode(codes[i]) == PieceType.PAWN &&
+                                        (square < Board.getCOLUMNS() || square >= SQUARES - Board.getCOLUMNS());
+                valid = (occupied & 1L << square) == 0 && !pawnOnLastRow;
+                occupied |= 1L << square;
+                if (valid) board.placePiece(codes[i], square);
+            }
+            board.setWhiteToMove(stm == 0);
+            PieceColor mover = stm == 0 ? PieceColor.WHITE : PieceColor.BLACK;
+            PieceColor other = stm == 0 ? PieceColor.BLACK : PieceColor.WHITE;
+            if (!valid || board.isInCheck(other)) {
+                entries[index] = INVALID;
+                continue;
+            }
+
+            moves.clear();
+            new MoveGenerator(board).generateLegalMoves(moves);
+            if (moves.isEmpty()) {
+                if (board.isInCheck(mover)) {
+                    entries[index] = SOLVED;
+                    mates.add(index);
+                } else {
+                    entries[index] = HAS_DRAW;
+                }
+                continue;
+            }
+
+            int remaining = 0;
+            int winDistance = Integer.MAX_VALUE;
+            int lossDistance = 0;
+            boolean hasDraw = false;
+            for (int i = 0; i < moves.size(); i++) {
+                int move = moves.get(i);
+                if (!Move.isCapture(move) && !Move.isPromotion(move)) {
+                    remaining++;
+                    continue;
+                }
+                board.makeMove(move);
+                int value = tablebases.probe(board);
+                board.unmakeMove();
+                if (value == Tablebase.NOT_FOUND) {
+                    throw new IllegalStateException("No table for a capture or promotion from " + generation.material);
+                }
+                if (Tablebase.isLoss(value)) winDistance = Math.min(winDistance, Tablebase.getDistanceToMate(value) + 1);
+                else if (Tablebase.isWin(value)) lossDistance = Math.max(lossDistance, Tablebase.getDistanceToMate(value) + 1);
+                else hasDraw = true;
+            }
+            int entry = remaining << REMAINING_SHIFT | lossDistance;
+            if (hasDraw) entry |= HAS_DRAW;
+            if (winDistance != Integer.MAX_VALUE) {
+                entry |= HAS_WIN;
+                generation.addPending(winDistance, index);
+            } else if (remaining == 0 && !hasDraw) {
+                generation.addPending(lossDistance, index);
+            }
+            entries[index] = entry;
+        }
+        return mates;
+    }
+
+    /**
+     * Takes back one move from every position solved at the previous distance, and returns the positions this solves
+     * at the given distance.
+     */
+    private IndexList retract(Generation generation, IndexList frontier, int distance) {
+        int chunkSize = Math.max(CHUNK_SIZE / SQUARES, (frontier.size + threads - 1) / threads);
+        List<Future<IndexList>> chunks = new ArrayList<>();
+        for (int start = 0; start < frontier.size; start += chunkSize) {
+            int from = start;
+            int to = Math.min(frontier.size, start + chunkSize);
+            chunks.add(workers.submit(() -> {
+                IndexList solved = new IndexList();
+                for (int i = from; i < to; i++) {
+                    retract(generation, frontier.indices[i], distance, solved);
+                }
+                return solved;
+            }));
+        }
+        IndexList next = new IndexList();
+        for (IndexList chunk : await(chunks)) {
+            next.addAll(chunk);
+        }
+        return next;
+    }
+
+    /**
+     * Finds every position from which a move that stays within the table leads to the given position, and updates it.
+     */
+    private void retract(Generation generation, int index, int distance, IndexList solved) {
+        int[] codes = generation.pieceCodes;
+        int pieceCount = codes.length;
+        int stm = index >>> 6 * pieceCount;
+        boolean lost = (generation.entries[index] & WIN) == 0;
+        PieceColor justMoved = stm == 0 ? PieceColor.BLACK : PieceColor.WHITE;
+        long occupied = 0L;
+        for (int i = 0; i < pieceCount; i++) {
+            occupied |= 1L << squareOf(index, i, pieceCount);
+        }
+        int flippedSide = index ^ 1 << 6 * pieceCount;
+
+        for (int i = 0; i < pieceCount; i++) {
+            if (Board.colorOfCode(codes[i]) != justMoved) continue;
+            int square = squareOf(index, i, pieceCount);
+            long origins = switch (Board.typeOfCode(codes[i])) {
+                case KING -> Attacks.king(square);
+                case KNIGHT -> Attacks.knight(square);
+                case BISHOP -> Attacks.bishop(square, occupied);
+                case ROOK -> Attacks.rook(square, occupied);
+                case QUEEN -> Attacks.queen(square, occupied);
+                case PAWN -> pawnOrigins(justMoved, square, occupied);
+            };
+            origins &= ~occupied;
+            int shift = 6 * (pieceCount - 1 - i);
+            for (; origins != 0; origins &= origins - 1) {
+                int origin = Long.numberOfTrailingZeros(origins);
+                int previous = flippedSide + (origin - square << shift);
+                updatePredecessor(generation.entries, previous, lost, distance, generation, solved);
+            }
+        }
+    }
+
+    /**
+     * Updates a position that has a move to a position solved at the previous distance: it is won if that position is
+     * lost, and lost if that was the last of its moves not known to lose.
+     */
+    private static void updatePredecessor(int[] entries, int index, boolean successorLost, int distance,
+                                          Generation generation, IndexList solved)
+    {
+        while (true) {
+            int entry = (int) ENTRIES.getVolatile(entries, index);
+            if ((entry & (SOLVED | INVALID)) != 0) return;
+            if (successorLost) {
+                if (ENTRIES.compareAndSet(entries, index, entry, SOLVED | WIN | distance)) solved.add(index);
+                else continue;
+                return;
+            }
+            int remaining = (entry >>> REMAINING_SHIFT & REMAINING_MASK) - 1;
+            boolean lost = remaining == 0 && (entry & (HAS_DRAW | HAS_WIN)) == 0;
+            int lossDistance = entry & DISTANCE_MASK;
+            if (lost && lossDistance <= distance) {
+                if (ENTRIES.compareAndSet(entries, index, entry, SOLVED | distance)) solved.add(index);
+                else continue;
+                return;
+            }
+            if (ENTRIES.compareAndSet(entries, index, entry, entry - REMAINING_ONE)) {
+                if (lost) generation.addPending(lossDistance, index);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the squares a pawn now on the given square can have come from with a move that is not a capture.
+     */
+    private static long pawnOrigins(PieceColor color, int square, long occupied) {
+        int row = Board.getRowAtSquare(square);
+        int step = color == PieceColor.WHITE ? Board.getCOLUMNS() : -Board.getCOLUMNS();
+        int doublePushRow = color == PieceColor.WHITE ? Board.getROWS() - 4 : 3;
+        int origin = square + step;
+        if (origin < 0 || origin >= SQUARES || (occupied & 1L << origin) != 0) return 0L;
+        if (Board.getRowAtSquare(origin) == 0 || Board.getRowAtSquare(origin) == Board.getROWS() - 1) return 0L;
+        long origins = 1L << origin;
+        if (row == doublePushRow && (occupied & 1L << origin + step) == 0) origins |= 1L << origin + step;
+        return origins;
+    }
+
+    private static int squareOf(int index, int piece, int pieceCount) {
+        return index >>> 6 * (pieceCount - 1 - piece) & SQUARES - 1;
+    }
+
+    private static void addRequired(String material, Set<String> required) {
+        if (required.contains(material)) return;
+        for (int i = 0; i < material.length(); i++) {
+            char letter = material.charAt(i);
+            if (letter == 'K') continue;
+            addRequired(normalizeMaterial(material.substring(0, i) + material.substring(i + 1)), required);
+            if (letter != 'P') continue;
+            for (char promotion : PROMOTION_LETTERS.toCharArray()) {
+                addRequired(normalizeMaterial(material.substring(0, i) + promotion + material.substring(i + 1)), required);
+            }
+        }
+        Tablebase.getPieceCodes(material);
+        required.add(material);
+    }
+
+    private static String sortPieces(String pieces) {
+        StringBuilder sorted = new StringBuilder();
+        for (char letter : pieces.toCharArray()) {
+            if (PIECE_ORDER.indexOf(letter) < 0) throw new IllegalArgumentException("Unknown piece: " + letter);
+        }
+        for (char letter : PIECE_ORDER.toCharArray()) {
+            for (char piece : pieces.toCharArray()) {
+                if (piece == letter) sorted.append(letter);
+            }
+        }
+        return sorted.toString();
+    }
+
+    /**
+     * Returns the longest distance to mate in a table, in plies.
+     */
+    private static int getLongestMate(Tablebase table) {
+        int longest = 0;
+        long count = Tablebase.getIndexCount(table.getMaterial().length());
+        for (long index = 0; index < count; index++) {
+            int value = table.getValue(index);
+            if (value != Tablebase.DRAW) longest = Math.max(longest, Tablebase.getDistanceToMate(value));
+        }
+        return longest;
+    }
+
+    private static <T> List<T> await(List<Future<T>> futures) {
+        List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (Future<T> future : futures) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while generating", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) throw runtimeException;
+            throw new IllegalStateException("Generating failed", e.getCause());
+        }
+        return results;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path directory = Path.of(DEFAULT_DIRECTORY);
+        List<String> endings = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--threads" -> threads = Integer.parseInt(args[++i]);
+                case "--directory" -> directory = Path.of(args[++i]);
+                default -> endings.add(args[i]);
+            }
+        }
+        if (endings.isEmpty()) endings.addAll(List.of(DEFAULT_ENDINGS));
+
+        Files.createDirectories(directory);
+        Tablebases tablebases = Tablebases.open(directory);
+        try (TablebaseGenerator generator = new TablebaseGenerator(tablebases, threads)) {
+            for (String ending : endings) {
+                for (String material : getRequiredMaterials(ending)) {
+                    if (tablebases.get(material) != null) continue;
+                    long start = System.nanoTime();
+                    Tablebase table = generator.generate(material);
+                    double seconds = (System.nanoTime() - start) / 1.0e9;
+                    Path file = directory.resolve(material + Tablebase.FILE_SUFFIX);
+                    table.write(file);
+                    System.out.printf("%-6s %,12d positions  longest mate %3d plies  %8.3f s  %,12d bytes%n", material,
+                                      Tablebase.getIndexCount(material.length()), getLongestMate(table), seconds,
+                                      Files.size(file));
+                }
+            }
+        }
+    }
+}
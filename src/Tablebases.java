@@ -0,0 +1,90 @@
+package se.liu.marfr380;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/**
+ * The endgame tables available to the engine, probed together: a probe finds the table with the material of the
+ * position, if there is one. Tables are added from memory or loaded from the table files of a directory.
+ * <p>
+ * Probing is safe from any number of threads, since the tables are read-only, and allocates nothing.
+ */
+public class Tablebases
+{
+    private volatile Tablebase[] tables = new Tablebase[0];
+    private volatile int maxPieces = 0;
+
+    /**
+     * Loads all table files of a directory.
+     *
+     * @param directory The directory.
+     *
+     * @return The tables.
+     *
+     * @throws IOException If the directory or a table file cannot be read.
+     */
+    public static Tablebases open(Path directory) throws IOException {
+        Tablebases tablebases = new Tablebases();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + Tablebase.FILE_SUFFIX)) {
+            for (Path file : files) {
+                tablebases.add(Tablebase.open(file));
+            }
+        }
+        return tablebases;
+    }
+
+    /**
+     * Adds a table.
+     *
+     * @param table The table.
+     */
+    public synchronized void add(Tablebase table) {
+        Tablebase[] larger = Arrays.copyOf(tables, tables.length + 1);
+        larger[tables.length] = table;
+        tables = larger;
+        maxPieces = Math.max(maxPieces, table.getMaterial().length());
+    }
+
+    /**
+     * Returns the table of a material balance.
+     *
+     * @param material The name of the material balance, starting with the stronger side as in table names.
+     *
+     * @return The table, or null if there is none.
+     */
+    public Tablebase get(String material) {
+        for (Tablebase table : tables) {
+            if (table.getMaterial().equals(material)) return table;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of pieces, kings included, of the largest tables.
+     *
+     * @return The number of pieces, or 0 if there are no tables.
+     */
+    public int getMaxPieces() {
+        return maxPieces;
+    }
+
+    /**
+     * Returns the value of a position in the table with its material.
+     *
+     * @param board The position.
+     *
+     * @return The value as described in {@link Tablebase}, or {@link Tablebase#NOT_FOUND} if there is no table for the
+     * position.
+     */
+    public int probe(Board board) {
+        if (Long.bitCount(board.getOccupied()) > maxPieces) return Tablebase.NOT_FOUND;
+        for (Tablebase table : tables) {
+            int value = table.probe(board);
+            if (value != Tablebase.NOT_FOUND) return value;
+        }
+        return Tablebase.NOT_FOUND;
+    }
+}
@@ -0,0 +1,152 @@
+package se.liu.marfr380;
+
+import java.util.Arrays;
+
+/**
+ * A fixed-size hash table of search results keyed by {@link Board#getZobristKey()}, which any number of search threads
+ * can share without locks.
+ * <p>
+ * The table is a single {@code long[]}. Every entry takes two longs: the key XORed with the data, followed by the
+ * data. A reader only accepts an entry if XORing the two longs gives back its key, so an entry that another thread
+ * was writing at the same time, and that therefore mixes two different writes, is treated as a miss instead of being
+ * trusted. Entries are grouped in buckets of four, 64 bytes or one cache line. When a bucket is full, the entry that is
+ * shallowest and from the oldest search is replaced.
+ * <p>
+ * The data long holds the best move in bits 0-31, the score in bits 32-47, the depth in bits 48-55, the bound type in
+ * bits 56-57 and the search generation in bits 58-63.
+ */
+public class TranspositionTable
+{
+    /**
+     * Bound types: the stored score is exact, a lower bound (the search failed high) or an upper bound (it failed low).
+     */
+    public final static int BOUND_EXACT = 1, BOUND_LOWER = 2, BOUND_UPPER = 3;
+
+    private final static int ENTRIES_PER_BUCKET = 4;
+    private final static int LONGS_PER_BUCKET = ENTRIES_PER_BUCKET * 2;
+    private final static int BYTES_PER_ENTRY = 16;
+    private final static int GENERATION_MASK = 63;
+    private final static int AGE_WEIGHT = 8;
+
+    private final long[] table;
+    private final long bucketMask;
+    private volatile int generation = 0;
+
+    /**
+     * Creates a table that uses at most the given amount of memory. The number of buckets is rounded down to a power of
+     * two.
+     *
+     * @param sizeInMegabytes The size of the table in megabytes, at least 1.
+     */
+    public TranspositionTable(int sizeInMegabytes) {
+        long entries = Math.max(1L, sizeInMegabytes) * 1024 * 1024 / BYTES_PER_ENTRY;
+        long buckets = Long.highestOneBit(Math.min(entries / ENTRIES_PER_BUCKET, Integer.MAX_VALUE / LONGS_PER_BUCKET));
+        this.table = new long[(int) (buckets * LONGS_PER_BUCKET)];
+        this.bucketMask = buckets - 1;
+    }
+
+    /**
+     * Removes all entries.
+     */
+    public void clear() {
+        Arrays.fill(table, 0L);
+        generation = 0;
+    }
+
+    /**
+     * Starts a new search, so that entries from earlier searches are replaced first.
+     */
+    public void newSearch() {
+        generation = (generation + 1) & GENERATION_MASK;
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param key The Zobrist key of the position.
+     *
+     * @return The stored data, to be decoded with the static getters, or 0 if the position is not in the table.
+     */
+    public long probe(long key) {
+        int bucket = bucketIndex(key);
+        for (int i = bucket; i < bucket + LONGS_PER_BUCKET; i += 2) {
+            long data = table[i + 1];
+            if ((table[i] ^ data) == key && data != 0) return data;
+        }
+        return 0L;
+    }
+
+    /**
+     * Stores the result of searching a position.
+     *
+     * @param key   The Zobrist key of the position.
+     * @param move  The best move found, or 0 if there is none.
+     * @param score The score, which must fit in 16 bits.
+     * @param depth The remaining depth the position was searched to, 0 to 255.
+     * @param bound One of {@link #BOUND_EXACT}, {@link #BOUND_LOWER} and {@link #BOUND_UPPER}.
+     */
+    public void store(long key, int move, int score, int depth, int bound) {
+        int bucket = bucketIndex(key);
+        int currentGeneration = generation;
+        int replace = bucket;
+        int worstValue = Integer.MAX_VALUE;
+        for (int i = bucket; i < bucket + LONGS_PER_BUCKET; i += 2) {
+            long data = table[i + 1];
+            if (data == 0 || (table[i] ^ data) == key) {
+                // Keep the old move if the new result has none
+                if (move == 0 && data != 0) move = getMove(data);
+                replace = i;
+                break;
+            }
+            int age = (currentGeneration - getGeneration(data)) & GENERATION_MASK;
+            int value = getDepth(data) - AGE_WEIGHT * age;
+            if (value < worstValue) {
+                worstValue = value;
+                replace = i;
+            }
+        }
+        long data = (move & 0xFFFFFFFFL) | (score & 0xFFFFL) << 32 | (long) (depth & 0xFF) << 48 |
+                    (long) bound << 56 | (long) currentGeneration << 58;
+        table[replace] = key ^ data;
+        table[replace + 1] = data;
+    }
+
+    /**
+     * Estimates how full the table is by sampling the first buckets.
+     *
+     * @return The number of used entries per thousand that belong to the current search.
+     */
+    public int getHashFull() {
+        int samples = Math.min(1000, table.length / 2);
+        int used = 0;
+        for (int i = 0; i < samples; i++) {
+            long data = table[i * 2 + 1];
+            if (data != 0 && getGeneration(data) == generation) used++;
+        }
+        return used * 1000 / Math.max(1, samples);
+    }
+
+    public static int getMove(long data) {
+        return (int) data;
+    }
+
+    public static int getScore(long data) {
+        return (short) (data >>> 32);
+    }
+
+    public static int getDepth(long data) {
+        return (int) (data >>> 48) & 0xFF;
+    }
+
+    public static int getBound(long data) {
+        return (int) (data >>> 56) & 3;
+    }
+
+    private static int getGeneration(long data) {
+        return (int) (data >>> 58) & GENERATION_MASK;
+    }
+
+    private int bucketIndex(long key) {
+        return (int) ((key ^ (key >>> 32)) & bucketMask) * LONGS_PER_BUCKET;
+    }
+}
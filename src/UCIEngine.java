@@ -0,0 +1,378 @@
+package se.liu.marfr380;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Speaks the Universal Chess Interface (UCI) protocol over standard input and output, so that the engine can be used
+ * from chess GUIs and tournament managers.
+ * <p>
+ * Commands are read on the calling thread and searches run on a thread of their own, so that {@code stop} and
+ * {@code quit} reach a running search at once. A {@code position ... moves ...} command that extends the position of
+ * the previous one only plays the new moves, and one that shares a start with it only takes back the moves that differ,
+ * instead of replaying the whole game every time.
+ * <p>
+ * Supported commands are {@code uci}, {@code isready}, {@code setoption} for {@code Hash}, {@code Threads},
+ * {@code OwnBook}, {@code BookFile} and {@code TablebasePath}, {@code ucinewgame}, {@code position}, {@code go} with {@code depth},
+ * {@code nodes}, {@code movetime}, {@code wtime}, {@code btime}, {@code winc}, {@code binc}, {@code movestogo} and
+ * {@code infinite}, {@code stop} and {@code quit}. With {@code OwnBook} on and a {@code BookFile} set, positions found
+ * in the {@link OpeningBook} are answered with a book move at once, without searching. The endgame tables in the
+ * {@code TablebasePath} directory are probed during the search, see {@link Tablebases}. After every search the time
+ * from the {@code go} command to the first {@code info} line is reported as an {@code info string}.
+ */
+public class UCIEngine
+{
+    private final static String NAME = "Chess";
+    private final static String AUTHOR = "marfr380";
+    private final static int DEFAULT_HASH_SIZE = 64;
+    private final static int MAX_HASH_SIZE = 4096;
+    private final static int MAX_THREADS = 256;
+    private final static int DEFAULT_MOVES_TO_GO = 30;
+    private final static long MOVE_OVERHEAD_MILLIS = 20;
+    private final static long STOP_POLL_MILLIS = 1;
+    private final static String EMPTY_STRING_OPTION = "<empty>";
+
+    private final PrintStream out;
+    private final ExecutorService searchThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "uci-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Board board = new Board();
+    private final List<String> playedMoves = new ArrayList<>();
+    private String startPosition = Board.START_FEN;
+    private int hashSize = DEFAULT_HASH_SIZE;
+    private int threads = 1;
+    private LazySMPSearch search = null;
+    private Future<?> runningSearch = null;
+    private OpeningBook book = null;
+    private boolean ownBook = false;
+    private Tablebases tablebases = null;
+    private final Random random = new Random();
+
+    private long goTime;
+    private volatile long firstInfoTime;
+
+    /**
+     * Creates an engine that writes its replies to the given stream.
+     *
+     * @param out Where to write the replies.
+     */
+    public UCIEngine(PrintStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Reads and handles commands until {@code quit} or the end of the input.
+     *
+     * @param in Where to read the commands from.
+     *
+     * @throws IOException If reading fails.
+     */
+    public void run(BufferedReader in) throws IOException {
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            if (!handle(line.trim())) break;
+        }
+        stopSearch();
+        if (search != null) search.shutdown();
+        searchThread.shutdownNow();
+        closeBook();
+    }
+
+    /**
+     * Handles one command.
+     *
+     * @param command The command line.
+     *
+     * @return False if the command was {@code quit}.
+     */
+    public boolean handle(String command) {
+        String[] tokens = command.split("\\s+");
+        switch (tokens[0]) {
+            case "uci" -> {
+                send("id name " + NAME);
+                send("id author " + AUTHOR);
+                send("option name Hash type spin default " + DEFAULT_HASH_SIZE + " min 1 max " + MAX_HASH_SIZE);
+                send("option name Threads type spin default 1 min 1 max " + MAX_THREADS);
+                send("option name OwnBook type check default false");
+                send("option name BookFile type string default " + EMPTY_STRING_OPTION);
+                send("option name TablebasePath type string default " + EMPTY_STRING_OPTION);
+                send("uciok");
+            }
+            case "isready" -> send("readyok");
+            case "setoption" -> setOption(tokens);
+            case "ucinewgame" -> {
+                stopSearch();
+                if (search != null) search.getTable().clear();
+            }
+            case "position" -> setPosition(tokens);
+            case "go" -> go(tokens);
+            case "stop" -> stopSearch();
+            case "quit" -> {
+                return false;
+            }
+            default -> {
+                if (!tokens[0].isEmpty()) send("info string unknown command " + command);
+            }
+        }
+        return true;
+    }
+
+    private void setOption(String[] tokens) {
+        StringBuilder name = new StringBuilder();
+        StringBuilder value = new StringBuilder();
+        StringBuilder part = null;
+        for (int i = 1; i < tokens.length; i++) {
+            if (tokens[i].equals("name")) part = name;
+            else if (tokens[i].equals("value")) part = value;
+            else if (part != null) (part.length() > 0 ? part.append(' ') : part).append(tokens[i]);
+        }
+        stopSearch();
+        String option = name.toString();
+        try {
+            if (option.equalsIgnoreCase("Hash")) {
+                hashSize = Math.max(1, Math.min(MAX_HASH_SIZE, Integer.parseInt(value.toString())));
+            } else if (option.equalsIgnoreCase("Threads")) {
+                threads = Math.max(1, Math.min(MAX_THREADS, Integer.parseInt(value.toString())));
+            } else if (option.equalsIgnoreCase("OwnBook")) {
+                ownBook = Boolean.parseBoolean(value.toString());
+                return;
+            } else if (option.equalsIgnoreCase("BookFile")) {
+                openBook(value.toString());
+                return;
+            } else if (option.equalsIgnoreCase("TablebasePath")) {
+                openTablebases(value.toString());
+                return;
+            } else {
+                send("info string unknown option " + option);
+                return;
+            }
+        } catch (NumberFormatException e) {
+            send("info string invalid value " + value + " for option " + option);
+            return;
+        }
+        if (search != null) search.shutdown();
+        search = null;
+    }
+
+    private void openBook(String path) {
+        closeBook();
+        if (path.isEmpty() || path.equals(EMPTY_STRING_OPTION)) return;
+        try {
+            book = OpeningBook.open(Path.of(path));
+        } catch (IOException | InvalidPathException e) {
+            send("info string cannot open book " + path + ": " + e.getMessage());
+        }
+    }
+
+    private void openTablebases(String path) {
+        tablebases = null;
+        if (!path.isEmpty() && !path.equals(EMPTY_STRING_OPTION)) {
+            try {
+                tablebases = Tablebases.open(Path.of(path));
+            } catch (IOException | InvalidPathException e) {
+                send("info string cannot open tablebases " + path + ": " + e.getMessage());
+            }
+        }
+        if (search != null) search.setTablebases(tablebases);
+    }
+
+    private void closeBook() {
+        if (book == null) return;
+        try {
+            book.close();
+        } catch (IOException e) {
+            send("info string cannot close book: " + e.getMessage());
+        }
+        book = null;
+    }
+
+    /**
+     * Sets up the position of a {@code position} command. Moves played by the previous command that the new one shares
+     * are kept on the board, so only the moves that differ are taken back or played.
+     */
+    private void setPosition(String[] tokens) {
+        stopSearch();
+        int i = 1;
+        String fen;
+        if (i < tokens.length && tokens[i].equals("startpos")) {
+            fen = Board.START_FEN;
+            i++;
+        } else if (i < tokens.length && tokens[i].equals("fen")) {
+            StringBuilder builder = new StringBuilder();
+            for (i++; i < tokens.length && !tokens[i].equals("moves"); i++) {
+                if (builder.length() > 0) builder.append(' ');
+                builder.append(tokens[i]);
+            }
+            fen = builder.toString();
+        } else {
+            send("info string malformed position command");
+            return;
+        }
+        if (i < tokens.length && tokens[i].equals("moves")) i++;
+
+        int shared = 0;
+        if (fen.equals(startPosition)) {
+            while (shared < playedMoves.size() && i + shared < tokens.length &&
+                   playedMoves.get(shared).equals(tokens[i + shared])) {
+                shared++;
+            }
+            while (playedMoves.size() > shared) {
+                board.unmakeMove();
+                playedMoves.remove(playedMoves.size() - 1);
+            }
+        } else {
+            try {
+                FENConverter.loadPositionFromFEN(board, fen);
+            } catch (IllegalArgumentException e) {
+                send("info string " + e.getMessage());
+                FENConverter.loadPositionFromFEN(board, Board.START_FEN);
+                fen = Board.START_FEN;
+            }
+            startPosition = fen;
+            playedMoves.clear();
+        }
+
+        for (int j = i + shared; j < tokens.length; j++) {
+            int move = Move.fromString(board, tokens[j]);
+            if (move == Move.NONE) {
+                send("info string illegal move " + tokens[j]);
+                return;
+            }
+            board.makeMove(move);
+            playedMoves.add(tokens[j]);
+        }
+    }
+
+    private void go(String[] tokens) {
+        stopSearch();
+        int depth = Search.MAX_DEPTH;
+        long nodes = SearchLimits.UNLIMITED;
+        long moveTime = SearchLimits.UNLIMITED;
+        long time = SearchLimits.UNLIMITED;
+        long increment = 0;
+        int movesToGo = DEFAULT_MOVES_TO_GO;
+        boolean white = board.isWhiteToMove();
+        for (int i = 1; i < tokens.length; i++) {
+            String value = i + 1 < tokens.length ? tokens[i + 1] : "0";
+            try {
+                switch (tokens[i]) {
+                    case "depth" -> depth = Math.max(1, Math.min(Search.MAX_DEPTH, Integer.parseInt(value)));
+                    case "nodes" -> nodes = Long.parseLong(value);
+                    case "movetime" -> moveTime = Long.parseLong(value);
+                    case "wtime" -> { if (white) time = Long.parseLong(value); }
+                    case "btime" -> { if (!white) time = Long.parseLong(value); }
+                    case "winc" -> { if (white) increment = Long.parseLong(value); }
+                    case "binc" -> { if (!white) increment = Long.parseLong(value); }
+                    case "movestogo" -> movesToGo = Math.max(1, Integer.parseInt(value));
+                    default -> { continue; }
+                }
+            } catch (NumberFormatException e) {
+                send("info string invalid value " + value + " for " + tokens[i]);
+            }
+            i++;
+        }
+        if (moveTime == SearchLimits.UNLIMITED && time != SearchLimits.UNLIMITED) {
+            moveTime = Math.min(time / movesToGo + increment * 3 / 4, time / 2);
+        }
+        if (moveTime != SearchLimits.UNLIMITED) moveTime = Math.max(1, moveTime - MOVE_OVERHEAD_MILLIS);
+
+        if (ownBook && book != null) {
+            int bookMove = book.pickMove(board, random);
+            if (bookMove != Move.NONE) {
+                send("info string book move");
+                send("bestmove " + Move.toString(bookMove));
+                return;
+            }
+        }
+
+        if (search == null) {
+            search = new LazySMPSearch(new TranspositionTable(hashSize), threads);
+            search.setIterationListener(this::sendInfo);
+            search.setTablebases(tablebases);
+        }
+        LazySMPSearch current = search;
+        SearchLimits limits = new SearchLimits(depth, moveTime, nodes);
+        Board root = new Board(board);
+        goTime = System.nanoTime();
+        firstInfoTime = 0;
+        runningSearch = searchThread.submit(() -> {
+            SearchResult result = current.search(root, limits);
+            long latency = firstInfoTime == 0 ? System.nanoTime() - goTime : firstInfoTime - goTime;
+            send(String.format("info string go to first info %.3f ms", latency / 1.0e6));
+            int move = result.getBestMove();
+            send("bestmove " + (move == Move.NONE ? "0000" : Move.toString(move)));
+        });
+    }
+
+    private void sendInfo(SearchResult result) {
+        if (firstInfoTime == 0) firstInfoTime = System.nanoTime();
+        StringBuilder builder = new StringBuilder("info depth ").append(result.getDepth());
+        int score = result.getScore();
+        if (Search.isMateScore(score)) {
+            int plies = Search.MATE_SCORE - Math.abs(score);
+            builder.append(" score mate ").append(score > 0 ? (plies + 1) / 2 : -(plies + 1) / 2);
+        } else {
+            builder.append(" score cp ").append(score);
+        }
+        builder.append(" nodes ").append(result.getNodes());
+        builder.append(" time ").append(result.getTimeMillis());
+        builder.append(" nps ").append(result.getNodesPerSecond());
+        builder.append(" hashfull ").append(search.getTable().getHashFull());
+        builder.append(" pv");
+        for (int move : result.getPrincipalVariation()) {
+            builder.append(' ').append(Move.toString(move));
+        }
+        send(builder.toString());
+    }
+
+    /**
+     * Stops the running search, if any, and waits until it has sent its best move. A search that had not yet started
+     * when it was first stopped clears the stop flag when it starts, so it is stopped again until it has finished.
+     */
+    private void stopSearch() {
+        if (runningSearch == null) return;
+        while (true) {
+            search.stop();
+            try {
+                runningSearch.get(STOP_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                break;
+            } catch (TimeoutException ignored) {
+                // Not done yet, stop it again
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ExecutionException e) {
+                send("info string search failed: " + e.getCause());
+                break;
+            }
+        }
+        runningSearch = null;
+    }
+
+    private void send(String line) {
+        synchronized (out) {
+            out.println(line);
+            out.flush();
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        new UCIEngine(System.out).run(in);
+    }
+}
@@ -0,0 +1,88 @@
+package se.liu.marfr380;
+
+/**
+ * The random numbers used to compute the 64-bit Zobrist key of a position.
+ * <p>
+ * A key is the XOR of one number per piece on its square, one for the castling rights, one for the file of a capturable
+ * en passant square and one if black is to move. Since XOR is its own inverse, {@link Board} can keep the key up to
+ * date by toggling only the numbers a move changes. The numbers come from a generator with a fixed seed, so keys are
+ * the same in every run.
+ */
+public final class Zobrist
+{
+    private final static int SQUARES = 64;
+    private final static int PIECE_CODES = 13;
+
+    private final static long[] PIECE_SQUARE = new long[PIECE_CODES * SQUARES];
+    private final static long[] CASTLING = new long[16];
+    private final static long[] EN_PASSANT_FILE = new long[8];
+    private final static long BLACK_TO_MOVE;
+
+    private static long state = 0x9E3779B97F4A7C15L;
+
+    static {
+        for (int i = SQUARES; i < PIECE_SQUARE.length; i++) {
+            PIECE_SQUARE[i] = nextRandom();
+        }
+        for (int i = 1; i < CASTLING.length; i++) {
+            CASTLING[i] = nextRandom();
+        }
+        for (int i = 0; i < EN_PASSANT_FILE.length; i++) {
+            EN_PASSANT_FILE[i] = nextRandom();
+        }
+        BLACK_TO_MOVE = nextRandom();
+    }
+
+    private Zobrist() {}
+
+    /**
+     * Returns the number for a piece on a square.
+     *
+     * @param code   The piece code, see {@link Board#toPieceCode}.
+     * @param square The square.
+     *
+     * @return The random number.
+     */
+    public static long piece(int code, int square) {
+        return PIECE_SQUARE[code * SQUARES + square];
+    }
+
+    /**
+     * Returns the number for a set of castling rights.
+     *
+     * @param castlingRights The castling right bits.
+     *
+     * @return The random number, 0 when no rights are left.
+     */
+    public static long castling(int castlingRights) {
+        return CASTLING[castlingRights];
+    }
+
+    /**
+     * Returns the number for an en passant square on the given file.
+     *
+     * @param column The column of the en passant square.
+     *
+     * @return The random number.
+     */
+    public static long enPassant(int column) {
+        return EN_PASSANT_FILE[column];
+    }
+
+    /**
+     * Returns the number that is included when black is to move.
+     *
+     * @return The random number.
+     */
+    public static long blackToMove() {
+        return BLACK_TO_MOVE;
+    }
+
+    private static long nextRandom() {
+        // xorshift64*, a small generator with a fixed seed so that the keys never change between runs
+        state ^= state >>> 12;
+        state ^= state << 25;
+        state ^= state >>> 27;
+        return state * 0x2545F4914F6CDD1DL;
+    }
+}
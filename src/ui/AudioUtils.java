@@ -1,4 +1,4 @@
-package se.liu.marfr380;
+package se.liu.marfr380.ui;
 import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.AudioSystem;
 import javax.sound.sampled.Clip;
@@ -1,4 +1,15 @@
-package se.liu.marfr380;
+package se.liu.marfr380.ui;
+
+import se.liu.marfr380.Bishop;
+import se.liu.marfr380.Board;
+import se.liu.marfr380.GameStatus;
+import se.liu.marfr380.Knight;
+import se.liu.marfr380.Move;
+import se.liu.marfr380.Piece;
+import se.liu.marfr380.PieceColor;
+import se.liu.marfr380.PieceType;
+import se.liu.marfr380.Queen;
+import se.liu.marfr380.Rook;
 
 import javax.swing.*;
 import java.awt.*;
@@ -43,20 +54,22 @@ public class BoardComponent extends JComponent implements MouseListener, MouseMo
 	drawBoard(g2d);
 	if(heldPiece!=null) drawPossibleMoves(g2d);
 	drawPieces(g2d);
-	if (board.upForPromotion != null){
+	if (board.getPieceUpForPromotion() != null){
 	    displayPromotionMenu(g2d);
 	}
     }
 
     private void displayPromotionMenu(Graphics2D g2d){
-	promotionPieces = loadPromotionPieces(board.promotionMenuStartSquare, board.upForPromotion.getColor());
+	if (promotionPieces == null || promotionPieces.get(0).getPos() != board.getPromotionMenuStartSquare()) {
+	    promotionPieces = loadPromotionPieces(board.getPromotionMenuStartSquare(), board.getPieceUpForPromotion().getColor());
+	}
 	for (Piece piece : promotionPieces) {
 	    int c = Board.getColumnAtSquare(piece.getPos());
 	    int r = Board.getRowAtSquare(piece.getPos());
 	    g2d.setColor(Color.WHITE);
 	    if (squareFromCoordinate(mousePos.x, mousePos.y) == r * 8 + c) g2d.setColor(Color.gray);
 	    g2d.fillRect(c * SQUARESIZE, r * SQUARESIZE, SQUARESIZE, SQUARESIZE);
-	    g2d.drawImage(piece.getImage(), c * SQUARESIZE, r * SQUARESIZE, SQUARESIZE, SQUARESIZE, this);
+	    g2d.drawImage(PieceImage.getImage(piece.getType(), piece.getColor()), c * SQUARESIZE, r * SQUARESIZE, SQUARESIZE, SQUARESIZE, this);
 	}
     }
 
@@ -81,14 +94,14 @@ public class BoardComponent extends JComponent implements MouseListener, MouseMo
 	    for (int c = 0; c < Board.getCOLUMNS(); c++){
 		Piece current = board.getPieceAt(squareNum);
 		if (current != null && !current.equals(heldPiece)) {
-		    g2d.drawImage(current.getImage(), c * SQUARESIZE, r * SQUARESIZE, SQUARESIZE, SQUARESIZE, this);
+		    g2d.drawImage(PieceImage.getImage(current.getType(), current.getColor()), c * SQUARESIZE, r * SQUARESIZE, SQUARESIZE, SQUARESIZE, this);
 		}
 		squareNum++;
 	    }
 	}
 	if (heldPiece != null){
 	    if (getMousePosition() != null) {
-		g2d.drawImage(heldPiece.getImage(), getMousePosition().x - (SQUARESIZE / 2), getMousePosition().y - (SQUARESIZE / 2),
+		g2d.drawImage(PieceImage.getImage(heldPiece.getType(), heldPiece.getColor()), getMousePosition().x - (SQUARESIZE / 2), getMousePosition().y - (SQUARESIZE / 2),
 			      SQUARESIZE, SQUARESIZE, this);
 	    }
 	}
@@ -96,11 +109,12 @@ public class BoardComponent extends JComponent implements MouseListener, MouseMo
 
     private void promotionInteraction(int x, int y){
 	int square = squareFromCoordinate(x,y);
+	PieceType promotionType = PieceType.QUEEN;
 	for (Piece piece : promotionPieces) {
-	    if(piece.getPos() == square) board.promotionType = piece.getType();
+	    if(piece.getPos() == square) promotionType = piece.getType();
 	}
-	board.promote(board.upForPromotion, board.promotionType);
-	board.upForPromotion = null;
+	board.completePromotion(promotionType);
+	promotionPieces = null;
     }
 
     private void drawBoard(Graphics2D g2d){
@@ -155,9 +169,8 @@ public class BoardComponent extends JComponent implements MouseListener, MouseMo
     }
 
     @Override public void mousePressed(final MouseEvent e) {
-	if (board.upForPromotion != null){
+	if (board.getPieceUpForPromotion() != null){
 		promotionInteraction(e.getX(), e.getY());
-		board.hasPressed = true;
 		return;
 	}
 	int clickedSquare = squareFromCoordinate(e.getX(), e.getY());
@@ -189,8 +202,9 @@ public class BoardComponent extends JComponent implements MouseListener, MouseMo
 	}
 	heldPiece = null;
 	repaint();
-	if(board.isMate()){
-	    System.out.println("Mate!!!!!");
+	GameStatus status = board.getGameStatus();
+	if (status.isOver()) {
+	    System.out.println(status.getDescription());
 	}
     }
 
@@ -1,9 +1,15 @@
-package se.liu.marfr380;
+package se.liu.marfr380.ui;
+
+import se.liu.marfr380.Board;
+import se.liu.marfr380.MoveList;
+import se.liu.marfr380.OpeningBook;
+import se.liu.marfr380.SANConverter;
 
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.io.IOException;
 
 /**
  * Class for displaying the chess board.
@@ -12,6 +18,7 @@ public class BoardViewer {
     private JFrame frame;
     private BoardComponent comp;
     private Board board;
+    private OpeningBook book = null;
 
     /**
      * Constructs a BoardViewer object with the specified board.
@@ -57,8 +64,16 @@ public class BoardViewer {
 		restartGame();
 	    }
 	});
+	JMenuItem bookOption = new JMenuItem("Book moves");
+	bookOption.addActionListener(new ActionListener() {
+	    @Override
+	    public void actionPerformed(final ActionEvent e) {
+		showBookMoves();
+	    }
+	});
 	JMenu options = new JMenu("Options");
 	options.add(restartOption);
+	options.add(bookOption);
 	options.add(exitOption);
 
 	bar.add(options);
@@ -73,6 +88,32 @@ public class BoardViewer {
 	board.resetToStartPosition();
     }
 
+    /**
+     * Shows the moves the opening book has for the current position. The book file is asked for the first time.
+     */
+    private void showBookMoves(){
+	if (book == null) {
+	    JFileChooser chooser = new JFileChooser();
+	    if (chooser.showOpenDialog(frame) != JFileChooser.APPROVE_OPTION) return;
+	    try {
+		book = OpeningBook.open(chooser.getSelectedFile().toPath());
+	    } catch (IOException e) {
+		JOptionPane.showMessageDialog(frame, "Could not open the book: " + e.getMessage(), "Book moves",
+					      JOptionPane.ERROR_MESSAGE);
+		return;
+	    }
+	}
+	MoveList moves = new MoveList();
+	book.getMoves(board, moves);
+	StringBuilder text = new StringBuilder();
+	for (int i = 0; i < moves.size(); i++) {
+	    if (text.length() > 0) text.append(", ");
+	    text.append(SANConverter.toSAN(board, moves.get(i)));
+	}
+	JOptionPane.showMessageDialog(frame, text.length() == 0 ? "The position is not in the book." : text.toString(),
+				      "Book moves", JOptionPane.INFORMATION_MESSAGE);
+    }
+
     /**
      * Asks the user for confirmation before exiting the game.
      */
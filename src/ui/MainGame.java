@@ -1,4 +1,6 @@
-package se.liu.marfr380;
+package se.liu.marfr380.ui;
+
+import se.liu.marfr380.Board;
 
 public class MainGame
 {
@@ -0,0 +1,85 @@
+package se.liu.marfr380.ui;
+
+import se.liu.marfr380.PieceColor;
+import se.liu.marfr380.PieceType;
+
+import javax.swing.*;
+import java.awt.*;
+import java.util.EnumMap;
+
+/**
+ * The sprites used to draw the pieces, shared by the whole process.
+ * <p>
+ * The twelve images are read from disk together the first time any of them is asked for, and never again. Creating a
+ * piece does not load anything, so code that never draws a piece never touches image I/O.
+ */
+public final class PieceImage
+{
+    private final static String IMAGE_PATH = "resources/images/";
+
+    private PieceImage() {}
+
+    /**
+     * Returns the sprite of a piece.
+     *
+     * @param pieceType  The type of the piece.
+     * @param pieceColor The color of the piece.
+     *
+     * @return The shared image of the piece.
+     */
+    public static Image getImage(PieceType pieceType, PieceColor pieceColor) {
+        return SpriteCache.SPRITES[pieceColor.ordinal() * PieceType.values().length + pieceType.ordinal()];
+    }
+
+    private static Image loadImage(PieceType pieceType, PieceColor pieceColor, EnumMap<PieceType, String> whitePieceMap,
+                                   EnumMap<PieceType, String> blackPieceMap) {
+        if (pieceColor == PieceColor.WHITE) {
+            return new ImageIcon(IMAGE_PATH + whitePieceMap.get(pieceType)).getImage();
+        }
+        return new ImageIcon(IMAGE_PATH + blackPieceMap.get(pieceType)).getImage();
+    }
+
+    private static Image[] loadSprites() {
+        final EnumMap<PieceType, String> whitePieceMap = createWhitePieceMap();
+        final EnumMap<PieceType, String> blackPieceMap = createBlackPieceMap();
+        Image[] sprites = new Image[PieceColor.values().length * PieceType.values().length];
+        for (PieceColor color : PieceColor.values()) {
+            for (PieceType type : PieceType.values()) {
+                sprites[color.ordinal() * PieceType.values().length + type.ordinal()] =
+                        loadImage(type, color, whitePieceMap, blackPieceMap);
+            }
+        }
+        return sprites;
+    }
+
+    /**
+     * Holds the loaded sprites. The JVM initializes this class, and so loads the images, exactly once and only when
+     * {@link #getImage} is first called.
+     */
+    private static class SpriteCache
+    {
+        private final static Image[] SPRITES = loadSprites();
+    }
+
+    private static EnumMap<PieceType, String> createBlackPieceMap() {
+        EnumMap<PieceType, String> blackPieces = new EnumMap<>(PieceType.class);
+        blackPieces.put(PieceType.KING, "Black_king.png");
+        blackPieces.put(PieceType.QUEEN, "Black_queen.png");
+        blackPieces.put(PieceType.BISHOP, "Black_bishop.png");
+        blackPieces.put(PieceType.KNIGHT, "Black_knight.png");
+        blackPieces.put(PieceType.PAWN, "Black_pawn.png");
+        blackPieces.put(PieceType.ROOK, "Black_rook.png");
+        return blackPieces;
+    }
+
+    private static EnumMap<PieceType, String> createWhitePieceMap() {
+        EnumMap<PieceType, String> whitePieces = new EnumMap<>(PieceType.class);
+        whitePieces.put(PieceType.KING, "White_king.png");
+        whitePieces.put(PieceType.QUEEN, "White_queen.png");
+        whitePieces.put(PieceType.BISHOP, "White_bishop.png");
+        whitePieces.put(PieceType.KNIGHT, "White_knight.png");
+        whitePieces.put(PieceType.PAWN, "White_pawn.png");
+        whitePieces.put(PieceType.ROOK, "White_rook.png");
+        return whitePieces;
+    }
+}
@@ -1,4 +1,12 @@
-package se.liu.marfr380;
+package se.liu.marfr380.ui;
+
+import se.liu.marfr380.Bishop;
+import se.liu.marfr380.Board;
+import se.liu.marfr380.Knight;
+import se.liu.marfr380.Piece;
+import se.liu.marfr380.PieceColor;
+import se.liu.marfr380.Queen;
+import se.liu.marfr380.Rook;
 
 import javax.swing.*;
 import java.awt.*;
@@ -29,7 +37,7 @@ public class PromotionComponent extends JComponent
 	    int r = Board.getRowAtSquare(piece.getPos());
 	    int squaresize = BoardComponent.SQUARESIZE;
 	    g2d.fillRect(c * squaresize, r * squaresize, squaresize, squaresize);
-	    g2d.drawImage(piece.getImage(), c * squaresize, r * squaresize, squaresize, squaresize, this);
+	    g2d.drawImage(PieceImage.getImage(piece.getType(), piece.getColor()), c * squaresize, r * squaresize, squaresize, squaresize, this);
 	}
     }
 }